@@ -1,11 +1,17 @@
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -14,6 +20,12 @@ public class App {
 
     private static final String API_KEY_FILE = "api_key.txt";
 
+    private static final SingleFlight<List<Object>, String> COMPLETIONS = new SingleFlight<>();
+
+    private static final SingleFlight<List<Object>, String> SEARCHES = new SingleFlight<>();
+
+    private static final String SEARCH_MODEL = "gemini-2.0-flash";
+
     public static void main(String[] args) {
         // Teste do método getApiKey para verificar a funcionalidade de autenticação
         String key = getApiKey();
@@ -28,7 +40,7 @@ public class App {
         }
     }
 
-    public static String getApiKey() {
+    public static synchronized String getApiKey() {
         // Cria referência para o arquivo onde a chave será armazenada
         Path filePath = Paths.get(API_KEY_FILE);
 
@@ -67,207 +79,634 @@ public class App {
     }
     
     public static String getGeminiCompletion(String model, double temperature, String prompt, String responseMimeType, boolean search) {
+        return getGeminiCompletion(model, temperature, prompt, responseMimeType, search, new GeminiOptions());
+    }
+
+    public static String getGeminiCompletion(String model, double temperature, String prompt, String responseMimeType, boolean search, GeminiOptions options) {
         try {
-            // FASE 1: Autenticação - Obtém chave API necessária para comunicação
-            String apiKey = getApiKey();
-            if (apiKey == null) {
-                System.err.println("Falha ao obter a chave API.");
-                return null;
+            // Versão bloqueante: aguarda a versão assíncrona na thread chamadora
+            return getGeminiCompletionAsync(model, temperature, prompt, responseMimeType, search, options).join();
+        } catch (Exception e) {
+            // TRATAMENTO DE ERROS: Captura qualquer falha durante o processo
+            System.err.println("Erro ao invocar Gemini: " + rootMessage(e));
+            return null;
+        }
+    }
+
+    public static CompletableFuture<String> getGeminiCompletionAsync(String model, double temperature, String prompt, String responseMimeType, boolean search) {
+        return getGeminiCompletionAsync(model, temperature, prompt, responseMimeType, search, new GeminiOptions());
+    }
+
+    public static CompletableFuture<String> getGeminiCompletionAsync(String model, double temperature, String prompt, String responseMimeType, boolean search, GeminiOptions options) {
+        // FASE 1: Consulta ao cache de respostas (chave = hash de modelo, temperatura, prompt, mime e busca)
+        // Com contexto compartilhado, o hash do prefixo entra na chave no lugar do nome do cache no servidor
+        ResponseCache cache = ResponseCache.getDefault();
+        // Busca em paralelo gera outra resposta (sem o contexto da busca) e usa chave própria
+        ContextCache context = options.getContext();
+        String keyPrompt = context != null ? context.getHash() + "\n" + prompt : prompt;
+        if (search && options.isConcurrentSearch()) {
+            keyPrompt = "concurrentSearch\n" + keyPrompt;
+        }
+        String cacheKey = ResponseCache.key(model, temperature, keyPrompt, responseMimeType, search);
+        if (cache != null && !options.isBypassCache()) {
+            String cached = cache.get(cacheKey);
+            if (cached != null) {
+                if (search) {
+                    // Resposta em cache: as referências da busca ainda entram no índice da execução
+                    indexCachedSearch(cache, prompt);
+                }
+                return CompletableFuture.completedFuture(cached);
             }
+        }
 
-            // FASE 2: Construção da URL - Monta endpoint da API Gemini
-            // URL segue padrão: https://generativelanguage.googleapis.com/v1beta/models/{model}:generateContent?key={key}
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent?key=" + apiKey;
+        // FASE 2: Agrupamento de chamadas idênticas em andamento (single-flight)
+        // Chamadores concorrentes com a mesma chave compartilham uma única troca HTTP e um único parse
+        CompletableFuture<String> result = COMPLETIONS.execute(flightKey(cacheKey, options),
+            () -> fetchWithinLimitAsync(model, temperature, prompt, responseMimeType, search, options, cache, cacheKey));
 
-            // FASE 3: Construção do corpo da requisição JSON
-            // Cria estrutura de dados compatível com a API Gemini
-            JSONObject requestBody = new JSONObject();
-            JSONArray contents = new JSONArray();
-            
-            // SUB-FASE 3A: Integração com busca (se habilitada)
-            if (search) {
-                // Adiciona contexto de busca como primeira mensagem
-                // Isso enriquece o conhecimento do modelo com informações atuais da web
-                System.out.print("Pesquisando na internet...");
-                JSONObject searchContent = new JSONObject();
-                searchContent.put("role", "model");
-                searchContent.put("parts", new JSONObject().put("text", getGeminiSearchResults(prompt)));
-                contents.put(searchContent);
+        // Timeout individual de cada chamador (a troca compartilhada só é cancelada quando ninguém mais a aguarda)
+        if (options.getTimeout() != null) {
+            result.orTimeout(options.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    private static CompletableFuture<String> fetchWithinLimitAsync(String model, double temperature, String prompt, String responseMimeType, boolean search, GeminiOptions options, ResponseCache cache, String cacheKey) {
+        // FASE 2B: Orçamento de tokens do prompt, verificado antes de qualquer envio
+        // Estimativa local; perto do limite, confirmada pelo endpoint countTokens
+        long maxTokens = options.getMaxPromptTokens() > 0 ? options.getMaxPromptTokens() : TokenBudget.MAX_PROMPT_TOKENS;
+        CompletableFuture<List<String>> prompts = TokenBudget.enforce(model, prompt, maxTokens, options.getOverflow());
+        if (prompts.isDone() && !prompts.isCompletedExceptionally() && prompts.join().size() == 1) {
+            // Caminho comum: uma única chamada segue direto (mantém o cancelamento da troca HTTP)
+            // Prompt truncado não vai para o cache: a chave é do prompt completo
+            String single = prompts.join().get(0);
+            boolean whole = single.equals(prompt);
+            return fetchCompletionAsync(model, temperature, single, responseMimeType, search, options, whole ? cache : null, whole ? cacheKey : null);
+        }
+        return prompts.thenCompose(parts -> {
+            // Respostas de prompts cortados ou divididos não vão para o cache: a chave é do prompt completo
+            if (parts.size() == 1) {
+                // Prompt truncado: uma única chamada
+                return fetchCompletionAsync(model, temperature, parts.get(0), responseMimeType, search, options, null, null);
             }
-            
-            // SUB-FASE 3B: Adiciona prompt principal do usuário
-            JSONObject content = new JSONObject();
-            content.put("role", "user");  // Define papel como usuário na conversa
-            content.put("parts", new JSONObject().put("text", prompt));  // Inclui texto do prompt
-            contents.put(content);
-            
-            // SUB-FASE 3C: Configura array de conteúdos na requisição
-            requestBody.put("contents", contents);
-            
-            // SUB-FASE 3D: Define configurações de geração
-            JSONObject generationConfig = new JSONObject().put("temperature", temperature);
-            generationConfig.put("response_mime_type", responseMimeType);
-            requestBody.put("generationConfig", generationConfig);
 
-            // Salva requisição para análise posterior
-            Files.writeString(Paths.get("requestBody.json"), requestBody.toString());
+            // Prompt dividido: uma chamada por parte e respostas unidas na ordem original
+            System.out.println("Prompt acima de " + maxTokens + " tokens dividido em " + parts.size() + " partes.");
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+            for (String part : parts) {
+                calls.add(fetchCompletionAsync(model, temperature, part, responseMimeType, search, options, null, null));
+            }
+            return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<String> responses = new ArrayList<>();
+                calls.forEach(call -> responses.add(call.join()));
+                return String.join("\n\n", responses);
+            });
+        });
+    }
 
-            // FASE 4: Execução da requisição HTTP
-            // Cria cliente HTTP reutilizável e thread-safe
-            HttpClient client = HttpClient.newHttpClient();
-            
-            // Constrói requisição POST com configurações apropriadas
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))  // Define URL de destino
-                    .header("Content-Type", "application/json")  // Especifica formato do corpo
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))  // Inclui dados JSON
-                    .build();
-
-            // FASE 5: Executa requisição e obtém resposta
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            String responseBody = response.body();
-            
-            // Salva resposta para análise posterior
-            Files.writeString(Paths.get("responseBody.json"), responseBody.toString());
-            
+    private static CompletableFuture<String> fetchCompletionAsync(String model, double temperature, String prompt, String responseMimeType, boolean search, GeminiOptions options, ResponseCache cache, String cacheKey) {
+        // Orçamento da execução: reserva os tokens estimados do prompt antes do envio
+        TokenBudget budget = options.getBudget();
+        long reserved = budget != null ? TokenEstimator.estimate(model, prompt) : 0;
+        if (budget != null && !budget.reserve(reserved)) {
+            return CompletableFuture.failedFuture(new TokenBudget.ExceededException("Orçamento de tokens esgotado (" + budget.stats() + ")"));
+        }
+
+        // Guarda a etapa HTTP em andamento para que o cancelamento do resultado a interrompa
+        AtomicReference<CompletableFuture<?>> inFlight = new AtomicReference<>();
+        AtomicReference<JSONObject> usage = new AtomicReference<>();
+
+        // SUB-FASE 3A: Integração com busca (se habilitada)
+        // O contexto de busca é obtido antes e encadeado, sem bloquear a thread chamadora;
+        // com busca em paralelo, a geração não espera a busca e o resultado dela é anexado ao final
+        boolean concurrent = search && options.isConcurrentSearch();
+        boolean grounded = search && !concurrent;
+        CompletableFuture<String> searchStage;
+        if (search) {
+            System.out.print("Pesquisando na internet...");
+            searchStage = getGeminiSearchResultsAsync(prompt, options);
+            inFlight.set(searchStage);
+        } else {
+            searchStage = CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<String> contextStage = concurrent ? CompletableFuture.completedFuture(null) : searchStage;
+        CompletableFuture<String> result = contextStage.thenCompose(searchResults -> {
+            // FASE 3: Construção do corpo da requisição JSON
+            ContextCache context = options.getContext();
+            String cachedContent = context != null ? context.getName() : null;
+            JSONObject requestBody = buildCompletionRequest(temperature, prompt, responseMimeType, grounded, searchResults, context, cachedContent);
+
+            // FASE 4 e 5: Execução da requisição HTTP sem bloquear (sendAsync)
+            // Usa o cliente de longa duração (pool de conexões, HTTP/2, keep-alive e timeouts)
+            // Requisição e resposta são registradas pelo TraceRecorder do cliente (opcional, gemini.trace)
+            CompletableFuture<String> call = GeminiClient.getDefault().generateContentAsync(model, requestBody, options.getTimeout(), options.isHedge());
+            if (cachedContent != null) {
+                // Cache de contexto expirado ou removido no servidor: reenvia uma vez com o prefixo no prompt
+                call = call.exceptionallyCompose(error -> {
+                    if (!isMissingCachedContent(error)) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    context.invalidate(cachedContent);
+                    JSONObject inlineBody = buildCompletionRequest(temperature, prompt, responseMimeType, grounded, searchResults, context, null);
+                    CompletableFuture<String> retry = GeminiClient.getDefault().generateContentAsync(model, inlineBody, options.getTimeout(), options.isHedge());
+                    inFlight.set(retry);
+                    return retry;
+                });
+            }
+            inFlight.set(call);
+            return call;
+        }).thenApply(responseBody -> {
             // FASE 6: Processamento da resposta JSON
-            // Parseia resposta JSON da API
             JSONObject responseJson = new JSONObject(responseBody);
 
-            // Salva resposta para análise posterior
-            Files.writeString(Paths.get("responseJson.json"), responseJson.toString());
-            
-            // Navega pela estrutura hierárquica da resposta para extrair texto
-            // Caminho: candidates -> [0] -> content -> parts -> [0] -> text
-            return responseJson.getJSONArray("candidates")      // Array de candidatos de resposta
-                    .getJSONObject(0)                           // Primeiro (e geralmente único) candidato
-                    .getJSONObject("content")                   // Conteúdo da resposta
-                    .getJSONArray("parts")                      // Array de partes do conteúdo
-                    .getJSONObject(0)                           // Primeira parte (texto principal)
-                    .getString("text");                         // Texto gerado pelo modelo
-                    
+            GeminiMetrics.getDefault().recordUsage(model, responseJson);
+            usage.set(responseJson.optJSONObject("usageMetadata"));
+            if (!search) {
+                // Calibração passiva do estimador com o promptTokenCount real, que inclui o prefixo
+                // do contexto compartilhado (no servidor ou no próprio prompt)
+                ContextCache context = options.getContext();
+                TokenEstimator.observe(model, context != null ? context.inline(prompt) : prompt, responseJson);
+            }
+            return extractText(responseJson);
+        });
+        if (concurrent) {
+            // Resposta e busca concluídas: o resultado da busca (com referências) segue após a resposta
+            result = result.thenCombine(searchStage, (text, searchResults) -> text + "\n\n## Resultado da busca na internet\n\n" + searchResults);
+            result.whenComplete((value, error) -> {
+                if (error != null && !searchStage.isDone()) {
+                    searchStage.cancel(true);
+                }
+            });
+        }
+        result = result.thenApply(text -> {
+            // Armazena no cache; respostas com busca usam TTL curto por dependerem de dados atuais
+            if (cache != null) {
+                cache.put(cacheKey, text, cacheTtl(options, search));
+            }
+            return text;
+        });
+        settleBudget(result, budget, reserved, usage);
+
+        // FASE 7: Propagação de cancelamento para a etapa HTTP em andamento
+        return GeminiClient.withTimeoutAndCancellation(result, null, inFlight);
+    }
+
+    public static boolean streamGeminiCompletion(String model, double temperature, String prompt, String responseMimeType, Consumer<String> onText) {
+        try {
+            // Versão bloqueante do streaming: retorna quando o último trecho foi entregue
+            streamGeminiCompletionAsync(model, temperature, prompt, responseMimeType, onText, new GeminiOptions()).join();
+            return true;
         } catch (Exception e) {
-            // TRATAMENTO DE ERROS: Captura qualquer falha durante o processo
-            System.err.println("Erro ao invocar Gemini: " + e.getMessage());
-            return null;
+            System.err.println("Erro ao invocar Gemini: " + rootMessage(e));
+            return false;
+        }
+    }
+
+    public static CompletableFuture<Void> streamGeminiCompletionAsync(String model, double temperature, String prompt, String responseMimeType, Consumer<String> onText, GeminiOptions options) {
+        // FASE 1: Mesma chave de cache da versão completa, sem contexto de busca
+        // (uma resposta gerada por uma das versões serve à outra)
+        ContextCache context = options.getContext();
+        String cacheKey = ResponseCache.key(model, temperature, context != null ? context.getHash() + "\n" + prompt : prompt, responseMimeType, false);
+
+        // FASE 3: Mesmo corpo de requisição da versão completa
+        JSONObject requestBody = buildCompletionRequest(temperature, prompt, responseMimeType, false, null, context, context != null ? context.getName() : null);
+
+        // FASE 4: Geração incremental (streamGenerateContent?alt=sse)
+        // Cada trecho de texto é entregue ao callback assim que o evento SSE correspondente chega
+        String estimated = context != null ? context.inline(prompt) : prompt;
+        return streamAsync(model, requestBody, estimated, cacheKey, onText, options).thenApply(text -> null);
+    }
+
+    public static CompletableFuture<String> getGeminiConversationAsync(String model, double temperature, String systemInstruction, JSONArray contents,
+            String responseMimeType, GeminiOptions options) {
+        // Conversa com vários turnos (user/model): o histórico segue em "contents" com os papéis corretos,
+        // sem colar respostas anteriores no texto de um novo prompt
+        JSONObject requestBody = buildConversationRequest(temperature, systemInstruction, contents, responseMimeType);
+
+        // FASE 1: Cache de respostas pela conversa inteira (instrução de sistema + histórico)
+        ResponseCache cache = ResponseCache.getDefault();
+        String cacheKey = ResponseCache.key(model, temperature, conversationKey(systemInstruction, contents), responseMimeType, false);
+        if (cache != null && !options.isBypassCache()) {
+            String cached = cache.get(cacheKey);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        // FASE 2: Conversas idênticas em andamento compartilham a chamada (single-flight)
+        CompletableFuture<String> result = COMPLETIONS.execute(flightKey(cacheKey, options), () -> {
+            TokenBudget budget = options.getBudget();
+            long reserved = budget != null ? TokenEstimator.estimate(model, requestBody.toString()) : 0;
+            if (budget != null && !budget.reserve(reserved)) {
+                return CompletableFuture.failedFuture(new TokenBudget.ExceededException("Orçamento de tokens esgotado (" + budget.stats() + ")"));
+            }
+            AtomicReference<JSONObject> usage = new AtomicReference<>();
+
+            // FASE 4 a 6: Execução assíncrona e extração do texto
+            CompletableFuture<String> call = GeminiClient.getDefault().generateContentAsync(model, requestBody, options.getTimeout(), options.isHedge());
+            CompletableFuture<String> text = call.thenApply(responseBody -> {
+                JSONObject responseJson = new JSONObject(responseBody);
+                GeminiMetrics.getDefault().recordUsage(model, responseJson);
+                usage.set(responseJson.optJSONObject("usageMetadata"));
+                String reply = extractText(responseJson);
+                if (cache != null) {
+                    cache.put(cacheKey, reply, cacheTtl(options, false));
+                }
+                return reply;
+            });
+            settleBudget(text, budget, reserved, usage);
+            return GeminiClient.withTimeoutAndCancellation(text, null, new AtomicReference<>(call));
+        });
+        if (options.getTimeout() != null) {
+            result.orTimeout(options.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
         }
+        return result;
+    }
+
+    public static CompletableFuture<String> streamGeminiConversationAsync(String model, double temperature, String systemInstruction, JSONArray contents,
+            String responseMimeType, Consumer<String> onText, GeminiOptions options) {
+        // Versão em streaming da conversa; devolve o texto completo ao final para entrar no histórico
+        String cacheKey = ResponseCache.key(model, temperature, conversationKey(systemInstruction, contents), responseMimeType, false);
+        JSONObject requestBody = buildConversationRequest(temperature, systemInstruction, contents, responseMimeType);
+        return streamAsync(model, requestBody, requestBody.toString(), cacheKey, onText, options);
+    }
+
+    private static CompletableFuture<String> streamAsync(String model, JSONObject requestBody, String estimated, String cacheKey,
+            Consumer<String> onText, GeminiOptions options) {
+        // FASE 1: Cache de respostas (mesma chave das versões completas)
+        ResponseCache cache = ResponseCache.getDefault();
+        if (cache != null && !options.isBypassCache()) {
+            String cached = cache.get(cacheKey);
+            if (cached != null) {
+                // Já respondido em execução anterior: entregue de uma vez, sem nova chamada
+                onText.accept(cached);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        // FASE 2: Chamadas idênticas em andamento, em streaming ou não, compartilham a troca (single-flight)
+        // Só o líder recebe os trechos à medida que chegam; quem se junta a ele recebe o texto de uma vez ao final
+        AtomicBoolean leader = new AtomicBoolean();
+        CompletableFuture<String> result = COMPLETIONS.execute(flightKey(cacheKey, options), () -> {
+            leader.set(true);
+
+            // Orçamento da execução: reserva os tokens estimados do prompt antes do envio
+            TokenBudget budget = options.getBudget();
+            long reserved = budget != null ? TokenEstimator.estimate(model, estimated) : 0;
+            if (budget != null && !budget.reserve(reserved)) {
+                return CompletableFuture.failedFuture(new TokenBudget.ExceededException("Orçamento de tokens esgotado (" + budget.stats() + ")"));
+            }
+            AtomicReference<JSONObject> usage = new AtomicReference<>();
+
+            // FASE 4 a 6: Geração incremental; o texto completo é montado para o cache e para os demais chamadores
+            StringBuilder reply = new StringBuilder();
+            CompletableFuture<JSONObject> call = GeminiClient.getDefault().streamGenerateContentAsync(model, requestBody, options.getTimeout(), options.isHedge(), text -> {
+                reply.append(text);
+                onText.accept(text);
+            });
+            CompletableFuture<String> text = call.thenApply(lastChunk -> {
+                usage.set(lastChunk != null ? lastChunk.optJSONObject("usageMetadata") : null);
+                if (cache != null) {
+                    cache.put(cacheKey, reply.toString(), cacheTtl(options, false));
+                }
+                return reply.toString();
+            });
+            settleBudget(text, budget, reserved, usage);
+            return GeminiClient.withTimeoutAndCancellation(text, null, new AtomicReference<>(call));
+        });
+        if (options.getTimeout() != null) {
+            result.orTimeout(options.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        CompletableFuture<String> delivered = result.thenApply(text -> {
+            if (!leader.get()) {
+                onText.accept(text);
+            }
+            return text;
+        });
+        return GeminiClient.withTimeoutAndCancellation(delivered, null, new AtomicReference<>(result));
     }
 
     public static String getGeminiSearchResults(String prompt) {
         try {
-            // FASE 1: Autenticação - Garante acesso à API Gemini
-            String apiKey = getApiKey();
-            if (apiKey == null) {
-                System.err.println("Falha ao obter a chave API.");
-                return null;
+            // Versão bloqueante: aguarda a versão assíncrona na thread chamadora
+            return getGeminiSearchResultsAsync(prompt, new GeminiOptions()).join();
+        } catch (Exception e) {
+            // TRATAMENTO DE ERROS: Captura falhas específicas de busca
+            System.err.println("Erro ao invocar Gemini: " + rootMessage(e));
+            return null;
+        }
+    }
+
+    public static CompletableFuture<String> getGeminiSearchResultsAsync(String prompt) {
+        return getGeminiSearchResultsAsync(prompt, new GeminiOptions());
+    }
+
+    public static CompletableFuture<String> getGeminiSearchResultsAsync(String prompt, GeminiOptions options) {
+        // FASE 1: Cache de buscas fundamentadas (chave = consulta normalizada, TTL curto de SEARCH_TTL)
+        // Guarda texto e referências separados para que o acerto também alimente o índice de referências
+        ResponseCache cache = ResponseCache.getDefault();
+        String searchKey = searchCacheKey(prompt);
+        if (cache != null && !options.isBypassCache()) {
+            JSONObject cached = cachedSearch(cache, searchKey);
+            if (cached != null) {
+                SearchReferences.getDefault().add(prompt, cached.getJSONArray("refs"));
+                return CompletableFuture.completedFuture(formatSearchResults(cached));
             }
+        }
+
+        // Buscas idênticas em andamento (ex.: prompts duplicados do planejador) compartilham a mesma chamada
+        CompletableFuture<String> result = SEARCHES.execute(flightKey(searchKey, options), () -> fetchSearchResultsAsync(prompt, options, cache, searchKey));
+        if (options.getTimeout() != null) {
+            result.orTimeout(options.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
 
+    public static String singleFlightStats() {
+        return "completions " + COMPLETIONS.stats() + "; buscas " + SEARCHES.stats();
+    }
+
+    private static CompletableFuture<String> fetchSearchResultsAsync(String prompt, GeminiOptions options, ResponseCache cache, String searchKey) {
+        try {
             // FASE 2: Configuração especializada para busca
             // Utiliza modelo específico com capacidades de busca integrada
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent?key=" + apiKey;
+            String searchModel = SEARCH_MODEL;
 
             // FASE 3: Construção da requisição com ferramentas de busca
-            JSONObject requestBody = new JSONObject();
-            
-            // SUB-FASE 3A: Configura conteúdo do usuário
-            JSONObject content = new JSONObject();
-            content.put("role", "user");  // Define papel na conversa
-            content.put("parts", new JSONObject().put("text", prompt));  // Inclui consulta de busca
-            requestBody.put("contents", new JSONObject[]{content});  // Adiciona à estrutura principal
-            
-            // SUB-FASE 3B: Define configurações de geração para busca
-            JSONObject generationConfig = new JSONObject().put("response_mime_type", "text/plain");
-            requestBody.put("generationConfig", generationConfig);
-            
-            // SUB-FASE 3C: CONFIGURAÇÃO CRÍTICA - Adiciona ferramenta Google Search
-            // Esta é a parte que habilita as capacidades de busca na web
-            JSONArray tools = new JSONArray();
-            tools.put(new JSONObject().put("googleSearch", new JSONObject()));  // Ferramenta vazia = configuração padrão
-            requestBody.put("tools", tools);
-
-            // Persiste requisição para debug de problemas de busca
-            Files.writeString(Paths.get("searchRequestBody.json"), requestBody.toString());
-
-            // FASE 4: Execução da requisição especializada
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                    .build();
-                    
-            // Executa requisição e captura resposta
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            String responseBody = response.body();
-            
-            // Persiste resposta para debug de problemas de busca
-            Files.writeString(Paths.get("searchResponseBody.json"), responseBody.toString());
+            JSONObject requestBody = buildSearchRequest(prompt);
 
-            // FASE 5: Processamento da resposta complexa com metadados
-            JSONObject responseJson = new JSONObject(responseBody);
-            JSONObject candidate = responseJson
-                .getJSONArray("candidates")  // Array de candidatos de resposta
-                .getJSONObject(0);           // Primeiro candidato (resposta principal)
-                
-            // SUB-FASE 5A: Extração do texto principal da resposta
-            String text = candidate
-                .getJSONObject("content")    // Conteúdo da resposta
-                .getJSONArray("parts")       // Partes do conteúdo
-                .getJSONObject(0)            // Primeira parte (texto principal)
-                .getString("text");          // Texto gerado baseado em busca
-
-            // FASE 6: Processamento de referências (grounding chunks)
-            // Utiliza StringBuilder para construção eficiente da resposta final
-            StringBuilder sb = new StringBuilder(text);
+            // Buscas também consomem o orçamento da execução
+            TokenBudget budget = options.getBudget();
+            long reserved = budget != null ? TokenEstimator.estimate(searchModel, prompt) : 0;
+            if (budget != null && !budget.reserve(reserved)) {
+                return CompletableFuture.failedFuture(new TokenBudget.ExceededException("Orçamento de tokens esgotado (" + budget.stats() + ")"));
+            }
+            AtomicReference<JSONObject> usage = new AtomicReference<>();
+
+            // FASE 4: Execução assíncrona da requisição especializada pelo cliente compartilhado
+            CompletableFuture<String> call = GeminiClient.getDefault().generateContentAsync(searchModel, requestBody, options.getTimeout(), options.isHedge());
+            CompletableFuture<String> result = call.thenApply(responseBody -> {
+                JSONObject responseJson = new JSONObject(responseBody);
+                GeminiMetrics.getDefault().recordUsage(searchModel, responseJson);
+                usage.set(responseJson.optJSONObject("usageMetadata"));
+                JSONObject groundedResult = parseSearchResults(responseJson);
+
+                // Armazena a busca no cache e as referências no índice da execução
+                if (cache != null) {
+                    cache.put(searchKey, groundedResult.toString(), ResponseCache.SEARCH_TTL);
+                }
+                SearchReferences.getDefault().add(prompt, groundedResult.getJSONArray("refs"));
+                return formatSearchResults(groundedResult);
+            });
+            settleBudget(result, budget, reserved, usage);
+            return GeminiClient.withTimeoutAndCancellation(result, null, new AtomicReference<>(call));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String searchCacheKey(String prompt) {
+        // Variações triviais da consulta (caixa, acentos, pontuação) compartilham o mesmo resultado
+        return ResponseCache.key("search:" + SEARCH_MODEL, 0, SearchReferences.normalizeQuery(prompt), "application/json", true);
+    }
+
+    private static JSONObject cachedSearch(ResponseCache cache, String searchKey) {
+        String cached = cache.get(searchKey);
+        try {
+            return cached != null ? new JSONObject(cached) : null;
+        } catch (Exception e) {
+            // Registro de outro formato: tratado como ausente
+            return null;
+        }
+    }
+
+    private static void indexCachedSearch(ResponseCache cache, String prompt) {
+        JSONObject cached = cachedSearch(cache, searchCacheKey(prompt));
+        if (cached != null) {
+            SearchReferences.getDefault().add(prompt, cached.getJSONArray("refs"));
+        }
+    }
+
+    private static Duration cacheTtl(GeminiOptions options, boolean search) {
+        return options.getCacheTtl() != null ? options.getCacheTtl()
+                : search ? ResponseCache.SEARCH_TTL : ResponseCache.DEFAULT_TTL;
+    }
+
+    private static void settleBudget(CompletableFuture<?> result, TokenBudget budget, long reserved, AtomicReference<JSONObject> usage) {
+        // Ao final da chamada a reserva é trocada pelo total real (prompt + resposta) de usageMetadata
+        if (budget != null) {
+            result.whenComplete((value, error) -> {
+                JSONObject metadata = usage.get();
+                budget.settle(reserved, metadata != null ? metadata.optLong("totalTokenCount", reserved) : 0);
+            });
+        }
+    }
+
+    private static JSONObject buildCompletionRequest(double temperature, String prompt, String responseMimeType, boolean search, String searchResults,
+            ContextCache context, String cachedContent) {
+        // Cria estrutura de dados compatível com a API Gemini
+        JSONObject requestBody = new JSONObject();
+        JSONArray contents = new JSONArray();
+
+        if (cachedContent != null) {
+            // Prefixo estável já está no servidor (cachedContents): a requisição leva só a parte variável
+            requestBody.put("cachedContent", cachedContent);
+        } else if (context != null) {
+            // Sem cache no servidor: o prefixo segue no início do próprio prompt
+            prompt = context.inline(prompt);
+        }
+
+        if (search) {
+            // Adiciona contexto de busca como primeira mensagem
+            // Isso enriquece o conhecimento do modelo com informações atuais da web
+            JSONObject searchContent = new JSONObject();
+            searchContent.put("role", "model");
+            searchContent.put("parts", new JSONObject().put("text", searchResults));
+            contents.put(searchContent);
+        }
+
+        // SUB-FASE 3B: Adiciona prompt principal do usuário
+        JSONObject content = new JSONObject();
+        content.put("role", "user");  // Define papel como usuário na conversa
+        content.put("parts", new JSONObject().put("text", prompt));  // Inclui texto do prompt
+        contents.put(content);
+
+        // SUB-FASE 3C: Configura array de conteúdos na requisição
+        requestBody.put("contents", contents);
+
+        // SUB-FASE 3D: Define configurações de geração
+        JSONObject generationConfig = new JSONObject().put("temperature", temperature);
+        generationConfig.put("response_mime_type", responseMimeType);
+        requestBody.put("generationConfig", generationConfig);
+        return requestBody;
+    }
+
+    private static JSONObject buildConversationRequest(double temperature, String systemInstruction, JSONArray contents, String responseMimeType) {
+        JSONObject requestBody = new JSONObject();
+
+        // Instrução de sistema separada dos turnos: não é repetida no texto de cada mensagem
+        if (systemInstruction != null) {
+            requestBody.put("systemInstruction", new JSONObject()
+                .put("parts", new JSONArray().put(new JSONObject().put("text", systemInstruction))));
+        }
+        requestBody.put("contents", contents);
+
+        JSONObject generationConfig = new JSONObject().put("temperature", temperature);
+        generationConfig.put("response_mime_type", responseMimeType);
+        requestBody.put("generationConfig", generationConfig);
+        return requestBody;
+    }
+
+    private static List<Object> flightKey(String cacheKey, GeminiOptions options) {
+        // Só chamadas com as mesmas opções de envio compartilham a troca: a do líder vale para todos os que se
+        // juntam a ela (limite e corte do prompt, validade no cache, hedge e o orçamento que paga a chamada).
+        // O timeout fica de fora porque é aplicado à cópia de cada chamador
+        return Arrays.asList(cacheKey, options.getMaxPromptTokens(), options.getOverflow(), options.getCacheTtl(), options.isHedge(), options.getBudget());
+    }
+
+    private static String conversationKey(String systemInstruction, JSONArray contents) {
+        // Texto canônico da conversa para a chave do cache: papel e partes de cada turno, na ordem.
+        // A resposta depende do histórico inteiro, então só uma conversa idêntica acerta: serve para reexecutar
+        // o mesmo agente ou retomar uma execução, não para reaproveitar turnos entre conversas diferentes
+        StringBuilder key = new StringBuilder(systemInstruction != null ? systemInstruction : "").append('\u0000');
+        for (int i = 0; i < contents.length(); i++) {
+            JSONObject turn = contents.getJSONObject(i);
+            JSONArray parts = turn.getJSONArray("parts");
+            key.append(turn.getString("role")).append('\u0000');
+            for (int j = 0; j < parts.length(); j++) {
+                key.append(parts.getJSONObject(j).optString("text")).append('\u0000');
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isMissingCachedContent(Throwable error) {
+        // A API responde 400/403/404 quando o cachedContent referenciado expirou ou não existe
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof GeminiException)) {
+            return false;
+        }
+        int status = ((GeminiException) cause).getStatusCode();
+        return status == 403 || status == 404
+            || (status == 400 && String.valueOf(cause.getMessage()).toLowerCase().contains("cache"));
+    }
+
+    private static JSONObject buildSearchRequest(String prompt) {
+        JSONObject requestBody = new JSONObject();
+
+        // SUB-FASE 3A: Configura conteúdo do usuário
+        JSONObject content = new JSONObject();
+        content.put("role", "user");  // Define papel na conversa
+        content.put("parts", new JSONObject().put("text", prompt));  // Inclui consulta de busca
+        requestBody.put("contents", new JSONObject[]{content});  // Adiciona à estrutura principal
+
+        // SUB-FASE 3B: Define configurações de geração para busca
+        JSONObject generationConfig = new JSONObject().put("response_mime_type", "text/plain");
+        requestBody.put("generationConfig", generationConfig);
+
+        // SUB-FASE 3C: CONFIGURAÇÃO CRÍTICA - Adiciona ferramenta Google Search
+        // Esta é a parte que habilita as capacidades de busca na web
+        JSONArray tools = new JSONArray();
+        tools.put(new JSONObject().put("googleSearch", new JSONObject()));  // Ferramenta vazia = configuração padrão
+        requestBody.put("tools", tools);
+        return requestBody;
+    }
+
+    private static String extractText(JSONObject responseJson) {
+        // Navega pela estrutura hierárquica da resposta para extrair texto
+        // Caminho: candidates -> [0] -> content -> parts -> [0] -> text
+        return responseJson.getJSONArray("candidates")      // Array de candidatos de resposta
+                .getJSONObject(0)                           // Primeiro (e geralmente único) candidato
+                .getJSONObject("content")                   // Conteúdo da resposta
+                .getJSONArray("parts")                      // Array de partes do conteúdo
+                .getJSONObject(0)                           // Primeira parte (texto principal)
+                .getString("text");                         // Texto gerado pelo modelo
+    }
+
+    private static JSONObject parseSearchResults(JSONObject responseJson) {
+        // FASE 5: Processamento da resposta complexa com metadados
+        // Resultado: {text, refs: [{uri, title}]}, o mesmo formato guardado no cache de buscas
+        JSONObject candidate = responseJson
+            .getJSONArray("candidates")  // Array de candidatos de resposta
+            .getJSONObject(0);           // Primeiro candidato (resposta principal)
+
+        // SUB-FASE 5A: Extração do texto principal da resposta
+        String text = candidate
+            .getJSONObject("content")    // Conteúdo da resposta
+            .getJSONArray("parts")       // Partes do conteúdo
+            .getJSONObject(0)            // Primeira parte (texto principal)
+            .getString("text");          // Texto gerado baseado em busca
+
+        // FASE 6: Processamento de referências (grounding chunks)
+        JSONArray refs = new JSONArray();
+        
+        // SUB-FASE 6A: Verifica disponibilidade de metadados de fundamentação
+        if (candidate.has("groundingMetadata")) {
+            JSONObject groundingMetadata = candidate.getJSONObject("groundingMetadata");
             
-            // SUB-FASE 6A: Verifica disponibilidade de metadados de fundamentação
-            if (candidate.has("groundingMetadata")) {
-                JSONObject groundingMetadata = candidate.getJSONObject("groundingMetadata");
+            // SUB-FASE 6B: Processa chunks de fundamentação (fontes individuais)
+            if (groundingMetadata.has("groundingChunks")) {
+                JSONArray chunks = groundingMetadata.getJSONArray("groundingChunks");
                 
-                // SUB-FASE 6B: Processa chunks de fundamentação (fontes individuais)
-                if (groundingMetadata.has("groundingChunks")) {
-                    JSONArray chunks = groundingMetadata.getJSONArray("groundingChunks");
-                    
-                    // Adiciona cabeçalho da seção de referências
-                    sb.append("\n\n# Referências\n");
-                    
-                    // SUB-FASE 6C: Itera sobre cada fonte encontrada
-                    for (int i = 0; i < chunks.length(); i++) {
-                        // Extrai informações da fonte web
-                        JSONObject web = chunks
-                            .getJSONObject(i)
-                            .getJSONObject("web");
-                            
-                        // Obtém título (opcional) e URI (obrigatório)
-                        String title = web.optString("title", null);  // Título pode não existir
-                        String uri   = web.getString("uri");          // URI sempre presente
-                        
-                        // SUB-FASE 6D: Formatação condicional da referência
-                        if (title != null && !title.isEmpty()) {
-                            // Formato Markdown com link: [Título](URL)
-                            sb.append("- [")
-                            .append(title)
-                            .append("](")
-                            .append(uri)
-                            .append(")\n");
-                        } else {
-                            // Formato simples: URL apenas
-                            sb.append("- ")
-                            .append(uri)
-                            .append("\n");
-                        }
+                // SUB-FASE 6C: Itera sobre cada fonte encontrada
+                for (int i = 0; i < chunks.length(); i++) {
+                    // Extrai informações da fonte web
+                    JSONObject web = chunks
+                        .getJSONObject(i)
+                        .optJSONObject("web");
+                    if (web == null) {
+                        continue;
                     }
+                        
+                    // Obtém título (opcional) e URI (obrigatório)
+                    refs.put(new JSONObject()
+                        .put("uri", web.getString("uri"))           // URI sempre presente
+                        .put("title", web.optString("title", ""))); // Título pode não existir
                 }
             }
+        }
+        return new JSONObject().put("text", text).put("refs", refs);
+    }
 
-            // FASE 7: Retorna resposta completa formatada
-            // Combina texto principal + referências em formato Markdown
-            return sb.toString();
+    private static String formatSearchResults(JSONObject groundedResult) {
+        // Utiliza StringBuilder para construção eficiente da resposta final
+        StringBuilder sb = new StringBuilder(groundedResult.getString("text"));
+        JSONArray refs = groundedResult.getJSONArray("refs");
+        if (refs.length() > 0) {
+            // Adiciona cabeçalho da seção de referências
+            sb.append("\n\n# Referências\n");
+        }
+        for (int i = 0; i < refs.length(); i++) {
+            String title = refs.getJSONObject(i).optString("title");
+            String uri   = refs.getJSONObject(i).getString("uri");
             
-        } catch (Exception e) {
-            // TRATAMENTO DE ERROS: Captura falhas específicas de busca
-            System.err.println("Erro ao invocar Gemini: " + e.getMessage());
-            return null;
+            // SUB-FASE 6D: Formatação condicional da referência
+            if (!title.isEmpty()) {
+                // Formato Markdown com link: [Título](URL)
+                sb.append("- [")
+                .append(title)
+                .append("](")
+                .append(uri)
+                .append(")\n");
+            } else {
+                // Formato simples: URL apenas
+                sb.append("- ")
+                .append(uri)
+                .append("\n");
+            }
+        }
+
+        // FASE 7: Retorna resposta completa formatada
+        // Combina texto principal + referências em formato Markdown
+        return sb.toString();
+    }
+
+    static String rootMessage(Throwable e) {
+        // Desembrulha CompletionException/ExecutionException para exibir a causa real
+        while ((e instanceof CompletionException || e instanceof java.util.concurrent.ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
         }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
     }
-}
\ No newline at end of file
+}
@@ -1,3 +1,6 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Date;
@@ -17,44 +20,59 @@ public class ChainOfThoughtAgent {
             // FASE 1: Obtenção de resposta com raciocínio detalhado
             System.out.println("Obtendo resposta completa...");
             
+            // Conversa em dois turnos: a síntese enxerga o raciocínio como turno "model" do histórico,
+            // em vez de recebê-lo colado no texto de um novo prompt
+            Conversation conversation = new Conversation(MODEL, TEMPERATURE);
+            
             // Constrói prompt Chain-of-Thought adicionando instrução de raciocínio
             String chainPrompt = USER_PROMPT + ". Responda detalhadamente o raciocínio passo-a-passo antes da resposta final.";
             
-            // Primeira chamada: foco no processo de raciocínio
-            String chainResponse = App.getGeminiCompletion(
-                MODEL, 
-                TEMPERATURE, 
-                chainPrompt, 
-                "text/plain", 
-                false  // Sem busca - baseado no conhecimento interno
-            );
+            // Primeira chamada: foco no processo de raciocínio (sem busca - baseado no conhecimento interno)
+            // Sem raciocínio não há síntese: o arquivo registra a falha em vez de manter o resultado anterior
+            String chainResponse;
+            try {
+                chainResponse = conversation.sendAsync(chainPrompt).join();
+            } catch (Exception e) {
+                System.err.println("Erro ao invocar Gemini: " + App.rootMessage(e));
+                Files.writeString(Paths.get(RESPONSE_FILE), "# Resposta do Gemini em " + new Date() + "\n\n"
+                    + "_Raciocínio não obtido: " + App.rootMessage(e) + "_\n");
+                return;
+            }
             
             // FASE 2: Síntese da resposta detalhada
             System.out.println("Obtendo resposta objetiva...");
             
-            // Constrói prompt de síntese usando a resposta anterior como contexto
-            String synthesisPrompt = "Responda de forma resumida, direta e objetiva: " + chainResponse;
+            // Segundo turno da mesma conversa: só a instrução de síntese é nova
+            String synthesisPrompt = "Responda de forma resumida, direta e objetiva.";
             
             // Segunda chamada: foco na concisão mantendo precisão
-            String response = App.getGeminiCompletion(
-                MODEL, 
-                TEMPERATURE, 
-                synthesisPrompt, 
-                "text/plain", 
-                false  // Sem busca - processa conteúdo já obtido
-            );
-            
-            // FASE 3: Formatação e persistência do resultado completo
-            // Cria estrutura que preserva tanto síntese quanto processo detalhado
-            String formattedContent = String.format(
-                "# Resposta do Gemini em %s\n\n%s\n\n\n...mas a resposta anterior foi: %s",
-                new Date(),
-                response,        // Resposta sintética (uso prático)
-                chainResponse    // Resposta detalhada (auditoria)
-            );
-            
-            // Persiste resultado completo para análise posterior
-            Files.writeString(Paths.get(RESPONSE_FILE), formattedContent);
+            // FASE 3: A síntese é transmitida em streaming direto para o arquivo,
+            // preservando em seguida o processo detalhado para auditoria
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(RESPONSE_FILE))) {
+                writer.write("# Resposta do Gemini em " + new Date() + "\n\n");
+                writer.flush();
+
+                try {
+                    conversation.streamAsync(
+                        synthesisPrompt, 
+                        text -> {
+                            try {
+                                writer.write(text);  // Resposta sintética (uso prático)
+                                writer.flush();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    ).join();
+                } catch (Exception e) {
+                    // O texto já transmitido fica no arquivo, seguido do motivo da interrupção
+                    System.err.println("Erro ao invocar Gemini: " + App.rootMessage(e));
+                    writer.write("\n\n_Resposta objetiva não obtida: " + App.rootMessage(e) + "_");
+                }
+
+                // Resposta detalhada (auditoria)
+                writer.write("\n\n\n...mas a resposta anterior foi: " + chainResponse);
+            }
             
             // FASE 4: Feedback de conclusão
             System.out.println("Resposta salva em " + RESPONSE_FILE);
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class Chunker {
+
+    // Orçamento de tokens por trecho; arquivos menores seguem inteiros
+    public static final int MAX_CHUNK_TOKENS = Integer.getInteger("agent.chunk.maxTokens", 8000);
+
+    // Linhas repetidas do fim do trecho anterior, para não perder contexto na fronteira
+    public static final int OVERLAP_LINES = Integer.getInteger("agent.chunk.overlapLines", 10);
+
+    // Início de declaração em nível de classe/membro (Java, JS/TS, Python, Go, Rust, C#...)
+    private static final Pattern CODE_BOUNDARY = Pattern.compile(
+        "^\\s{0,4}(@\\w+|/\\*\\*|(public|private|protected|internal|static|final|abstract|export|async|class|interface|enum|record|def|function|func|fn|impl|struct|type)\\b).*");
+
+    private static final Pattern MARKDOWN_HEADING = Pattern.compile("^#{1,6}\\s.*");
+
+    public static class Chunk {
+
+        private final int startLine;
+
+        private final int endLine;
+
+        // Última linha repetida do trecho anterior (sobreposição), ou startLine - 1 se não houver
+        private final int overlapEndLine;
+
+        private final String text;
+
+        Chunk(int startLine, int endLine, int overlapEndLine, String text) {
+            this.startLine = startLine;
+            this.endLine = endLine;
+            this.overlapEndLine = overlapEndLine;
+            this.text = text;
+        }
+
+        public int getStartLine() {
+            return startLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getOverlapEndLine() {
+            return overlapEndLine;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public static List<Chunk> split(String content, String fileName) {
+        List<Chunk> chunks = new ArrayList<>();
+        if (TokenEstimator.estimate(content) <= MAX_CHUNK_TOKENS) {
+            // Arquivo dentro do orçamento: um único trecho com o conteúdo original, sem numeração
+            chunks.add(new Chunk(1, (int) content.lines().count(), 0, content));
+            return chunks;
+        }
+
+        // FASE 1: Linhas candidatas a fronteira conforme o tipo do arquivo
+        String[] lines = content.split("\n", -1);
+        boolean markdown = fileName.endsWith(".md") || fileName.endsWith(".markdown");
+
+        // FASE 2: Trechos até o orçamento, cortados na última fronteira natural da segunda metade
+        int start = 0;
+        int previousEnd = 0;
+        while (start < lines.length) {
+            int end = start;
+            long tokens = 0;
+            int boundary = -1;
+            while (end < lines.length) {
+                // Tokens da linha + prefixo com o número da linha
+                long lineTokens = TokenEstimator.estimate(lines[end]) + 2;
+                if (tokens + lineTokens > MAX_CHUNK_TOKENS && end > start) {
+                    break;
+                }
+                if (end > start && tokens >= MAX_CHUNK_TOKENS / 2 && isBoundary(lines, end, markdown)) {
+                    boundary = end;
+                }
+                tokens += lineTokens;
+                end++;
+            }
+            if (end < lines.length && boundary > start) {
+                end = boundary;
+            }
+            chunks.add(new Chunk(start + 1, end, Math.max(start, previousEnd), numbered(lines, start, end)));
+            if (end >= lines.length) {
+                break;
+            }
+            previousEnd = end;
+
+            // FASE 3: Sobreposição com o trecho anterior, sempre avançando ao menos uma linha
+            start = Math.max(start + 1, end - OVERLAP_LINES);
+        }
+        return chunks;
+    }
+
+    public static String describe(Chunk chunk, int total) {
+        // Cabeçalho do trecho para o prompt: numeração preservada para colunas de "linha"
+        if (total == 1) {
+            return chunk.getText();
+        }
+        String header = String.format("[Trecho com as linhas %d a %d; cada linha está prefixada com seu número no arquivo original",
+            chunk.getStartLine(), chunk.getEndLine());
+        if (chunk.getOverlapEndLine() >= chunk.getStartLine()) {
+            // Sobreposição já analisada no trecho anterior: só contexto, para não repetir apontamentos ao unir os trechos
+            header += String.format(". As linhas %d a %d repetem o fim do trecho anterior apenas como contexto: não faça apontamentos sobre elas",
+                chunk.getStartLine(), chunk.getOverlapEndLine());
+        }
+        return header + "]\n" + chunk.getText();
+    }
+
+    private static boolean isBoundary(String[] lines, int index, boolean markdown) {
+        if (markdown) {
+            // Markdown: títulos, ou início de parágrafo após linha em branco
+            return MARKDOWN_HEADING.matcher(lines[index]).matches()
+                || (lines[index - 1].isBlank() && !lines[index].isBlank());
+        }
+        // Código: declaração de classe/método precedida de linha em branco ou de fechamento de bloco
+        String previous = lines[index - 1].strip();
+        return CODE_BOUNDARY.matcher(lines[index]).matches()
+            && (previous.isEmpty() || previous.endsWith("}") || previous.endsWith(";"));
+    }
+
+    private static String numbered(String[] lines, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            sb.append(i + 1).append(": ").append(lines[i]).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,555 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+public class ColumnarSeries {
+
+    // Linhas (coletas) por bloco; cada bloco tem cabeçalho próprio e pode ser pulado sem decodificar
+    public static final int BLOCK_ROWS = Integer.getInteger("agent.stocks.blockRows", 1024);
+
+    private static final int MAGIC = 0x54534332;  // "TSC2": escala decimal por coluna
+
+    private static final int MAGIC_V1 = 0x54534331;  // "TSC1": todas as colunas em XOR de double
+
+    // Maior escala decimal tentada para gravar uma coluna em ponto fixo (preços com até 9 casas)
+    private static final int MAX_SCALE = 9;
+
+    public static class Block {
+
+        // Instantes em epoch millis e deslocamento do fuso (igual em todo o bloco)
+        private final long[] timestamps;
+
+        private final int offsetSeconds;
+
+        // Uma coluna por ticker; NaN marca ticker ausente na coleta
+        private final String[] tickers;
+
+        private final double[][] values;
+
+        private final double[] min;
+
+        private final double[] max;
+
+        private final long minTime;
+
+        private final long maxTime;
+
+        Block(long[] timestamps, int offsetSeconds, String[] tickers, double[][] values, double[] min, double[] max, long minTime, long maxTime) {
+            this.timestamps = timestamps;
+            this.offsetSeconds = offsetSeconds;
+            this.tickers = tickers;
+            this.values = values;
+            this.min = min;
+            this.max = max;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        static Block of(long[] timestamps, int offsetSeconds, String[] tickers, double[][] values) {
+            // Estatísticas do cabeçalho calculadas na montagem do bloco (na leitura, vêm do próprio cabeçalho)
+            double[] min = new double[tickers.length];
+            double[] max = new double[tickers.length];
+            for (int column = 0; column < tickers.length; column++) {
+                min[column] = Double.NaN;
+                max[column] = Double.NaN;
+                for (double value : values[column]) {
+                    if (!Double.isNaN(value)) {
+                        min[column] = Double.isNaN(min[column]) ? value : Math.min(min[column], value);
+                        max[column] = Double.isNaN(max[column]) ? value : Math.max(max[column], value);
+                    }
+                }
+            }
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            for (long timestamp : timestamps) {
+                minTime = Math.min(minTime, timestamp);
+                maxTime = Math.max(maxTime, timestamp);
+            }
+            return new Block(timestamps, offsetSeconds, tickers, values, min, max, minTime, maxTime);
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public long[] getTimestamps() {
+            return timestamps;
+        }
+
+        public int getOffsetSeconds() {
+            return offsetSeconds;
+        }
+
+        public String[] getTickers() {
+            return tickers;
+        }
+
+        public double[] getValues(int column) {
+            return values[column];
+        }
+
+        public double getMin(int column) {
+            return min[column];
+        }
+
+        public double getMax(int column) {
+            return max[column];
+        }
+
+        public long getMinTime() {
+            return minTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public JSONObject record(int row) {
+            // Linha no formato do StocksLoggerAgent: {"timestamp": ISO com fuso, "stocks": {ticker: preço}}
+            JSONObject stocks = new JSONObject();
+            for (int column = 0; column < tickers.length; column++) {
+                if (!Double.isNaN(values[column][row])) {
+                    stocks.put(tickers[column], values[column][row]);
+                }
+            }
+            String timestamp = OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestamps[row]), ZoneOffset.ofTotalSeconds(offsetSeconds))
+                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            return new JSONObject().put("timestamp", timestamp).put("stocks", stocks);
+        }
+    }
+
+    public static List<Block> toBlocks(List<JSONObject> records) {
+        // Agrupa as coletas em blocos de até BLOCK_ROWS linhas com o mesmo fuso horário
+        List<Block> blocks = new ArrayList<>();
+        int start = 0;
+        while (start < records.size()) {
+            int offset = offsetOf(records.get(start));
+            int end = start;
+            while (end < records.size() && end - start < BLOCK_ROWS && offsetOf(records.get(end)) == offset) {
+                end++;
+            }
+            blocks.add(toBlock(records.subList(start, end), offset));
+            start = end;
+        }
+        return blocks;
+    }
+
+    public static void write(Path file, List<Block> blocks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Block block : blocks) {
+            out.write(encode(block));
+        }
+        Files.write(file, out.toByteArray());
+    }
+
+    public static void read(Path file, long from, long to, Consumer<Block> consumer) throws IOException {
+        // Varredura bloco a bloco; blocos fora do intervalo [from, to] são pulados pelo cabeçalho, sem decodificar
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.hasRemaining()) {
+            Header header = readHeader(buffer, file);
+            if (header.maxTime < from || header.minTime > to) {
+                buffer.position(buffer.position() + header.dataBytes());
+                continue;
+            }
+            consumer.accept(decode(buffer, header));
+        }
+    }
+
+    public static long count(Path file) throws IOException {
+        // Total de linhas lido só dos cabeçalhos
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        long rows = 0;
+        while (buffer.hasRemaining()) {
+            Header header = readHeader(buffer, file);
+            rows += header.rows;
+            buffer.position(buffer.position() + header.dataBytes());
+        }
+        return rows;
+    }
+
+    private static Block toBlock(List<JSONObject> records, int offset) {
+        // Colunas: união dos tickers do bloco, na ordem em que aparecem
+        Set<String> names = new LinkedHashSet<>();
+        for (JSONObject record : records) {
+            names.addAll(record.getJSONObject("stocks").keySet());
+        }
+        String[] tickers = names.toArray(new String[0]);
+        long[] timestamps = new long[records.size()];
+        double[][] values = new double[tickers.length][records.size()];
+        for (int row = 0; row < records.size(); row++) {
+            JSONObject record = records.get(row);
+            timestamps[row] = OffsetDateTime.parse(record.getString("timestamp"), DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+            JSONObject stocks = record.getJSONObject("stocks");
+            for (int column = 0; column < tickers.length; column++) {
+                Object value = stocks.opt(tickers[column]);
+                if (value != null && !(value instanceof Number)) {
+                    throw new IllegalArgumentException("Preço não numérico para " + tickers[column] + ": " + value);
+                }
+                values[column][row] = value != null ? ((Number) value).doubleValue() : Double.NaN;
+            }
+        }
+        return Block.of(timestamps, offset, tickers, values);
+    }
+
+    private static int offsetOf(JSONObject record) {
+        return OffsetDateTime.parse(record.getString("timestamp"), DateTimeFormatter.ISO_OFFSET_DATE_TIME).getOffset().getTotalSeconds();
+    }
+
+    private static byte[] encode(Block block) {
+        // FASE 1: Colunas comprimidas (timestamps por delta-of-delta; preços com poucas casas decimais
+        // em ponto fixo por delta, os demais por XOR do double)
+        byte[] time = encodeTimestamps(block.timestamps);
+        byte[][] columns = new byte[block.tickers.length][];
+        byte[][] names = new byte[block.tickers.length][];
+        int[] scales = new int[block.tickers.length];
+        int size = 4 + 4 + 8 + 8 + 4 + 4 + 4 + time.length;
+        for (int column = 0; column < columns.length; column++) {
+            scales[column] = decimalScale(block.values[column]);
+            columns[column] = scales[column] >= 0 ? encodeFixed(block.values[column], scales[column]) : encodeValues(block.values[column]);
+            names[column] = block.tickers[column].getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[column].length + 1 + 8 + 8 + 4 + columns[column].length;
+        }
+
+        // FASE 2: Cabeçalho do bloco: [magic][linhas][t mín][t máx][fuso][colunas][bytes tempo]
+        // e, por coluna, [ticker][escala][mín][máx][bytes]; em seguida os dados das colunas
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(block.size()).putLong(block.getMinTime()).putLong(block.getMaxTime())
+            .putInt(block.offsetSeconds).putInt(columns.length).putInt(time.length);
+        for (int column = 0; column < columns.length; column++) {
+            buffer.putShort((short) names[column].length).put(names[column]).put((byte) scales[column])
+                .putDouble(block.min[column]).putDouble(block.max[column]).putInt(columns[column].length);
+        }
+        buffer.put(time);
+        for (byte[] column : columns) {
+            buffer.put(column);
+        }
+        return buffer.array();
+    }
+
+    private static Block decode(ByteBuffer buffer, Header header) {
+        long[] timestamps = decodeTimestamps(slice(buffer, header.timeBytes), header.rows);
+        double[][] values = new double[header.tickers.length][];
+        for (int column = 0; column < values.length; column++) {
+            byte[] bytes = slice(buffer, header.columnBytes[column]);
+            values[column] = header.scales[column] >= 0 ? decodeFixed(bytes, header.rows, header.scales[column]) : decodeValues(bytes, header.rows);
+        }
+        return new Block(timestamps, header.offsetSeconds, header.tickers, values, header.min, header.max, header.minTime, header.maxTime);
+    }
+
+    private static byte[] slice(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static class Header {
+
+        private int rows;
+
+        private long minTime;
+
+        private long maxTime;
+
+        private int offsetSeconds;
+
+        private int timeBytes;
+
+        private String[] tickers;
+
+        private int[] columnBytes;
+
+        // Casas decimais da coluna em ponto fixo, ou -1 para XOR do double
+        private int[] scales;
+
+        private double[] min;
+
+        private double[] max;
+
+        int dataBytes() {
+            int total = timeBytes;
+            for (int bytes : columnBytes) {
+                total += bytes;
+            }
+            return total;
+        }
+    }
+
+    private static Header readHeader(ByteBuffer buffer, Path file) throws IOException {
+        int magic = buffer.remaining() < 36 ? 0 : buffer.getInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            throw new IOException("Bloco colunar inválido em " + file);
+        }
+        Header header = new Header();
+        header.rows = buffer.getInt();
+        header.minTime = buffer.getLong();
+        header.maxTime = buffer.getLong();
+        header.offsetSeconds = buffer.getInt();
+        int columns = buffer.getInt();
+        header.timeBytes = buffer.getInt();
+        header.tickers = new String[columns];
+        header.columnBytes = new int[columns];
+        header.scales = new int[columns];
+        header.min = new double[columns];
+        header.max = new double[columns];
+        for (int column = 0; column < columns; column++) {
+            header.tickers[column] = new String(slice(buffer, buffer.getShort()), StandardCharsets.UTF_8);
+            // Blocos TSC1 (antes da escala por coluna) têm todas as colunas em XOR
+            header.scales[column] = magic == MAGIC ? buffer.get() : -1;
+            header.min[column] = buffer.getDouble();
+            header.max[column] = buffer.getDouble();
+            header.columnBytes[column] = buffer.getInt();
+        }
+        return header;
+    }
+
+    private static byte[] encodeTimestamps(long[] timestamps) {
+        // Delta-of-delta (Gorilla): coletas em intervalo fixo viram quase só bits "0"
+        BitWriter out = new BitWriter();
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (i == 0) {
+                out.write(timestamps[0], 64);
+            } else {
+                long delta = timestamps[i] - previous;
+                writeVarying(out, delta - previousDelta);
+                previousDelta = delta;
+            }
+            previous = timestamps[i];
+        }
+        return out.toByteArray();
+    }
+
+    private static long[] decodeTimestamps(byte[] bytes, int rows) {
+        BitReader in = new BitReader(bytes);
+        long[] timestamps = new long[rows];
+        long previousDelta = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i == 0) {
+                timestamps[0] = in.read(64);
+                continue;
+            }
+            previousDelta += readVarying(in);
+            timestamps[i] = timestamps[i - 1] + previousDelta;
+        }
+        return timestamps;
+    }
+
+    private static void writeVarying(BitWriter out, long value) {
+        // Inteiro pequeno com prefixo de tamanho (Gorilla): 0 custa 1 bit; até ±2048, no máximo 16 bits
+        if (value == 0) {
+            out.write(0b0, 1);
+        } else if (value >= -64 && value <= 63) {
+            out.write(0b10, 2);
+            out.write(value, 7);
+        } else if (value >= -256 && value <= 255) {
+            out.write(0b110, 3);
+            out.write(value, 9);
+        } else if (value >= -2048 && value <= 2047) {
+            out.write(0b1110, 4);
+            out.write(value, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(value, 64);
+        }
+    }
+
+    private static long readVarying(BitReader in) {
+        if (in.read(1) == 0) {
+            return 0;
+        } else if (in.read(1) == 0) {
+            return in.readSigned(7);
+        } else if (in.read(1) == 0) {
+            return in.readSigned(9);
+        } else if (in.read(1) == 0) {
+            return in.readSigned(12);
+        }
+        return in.read(64);
+    }
+
+    private static int decimalScale(double[] values) {
+        // Menor número de casas decimais em que todos os preços da coluna voltam bit a bit iguais;
+        // -1 se não houver (ausências, valores fora da faixa exata do double ou com casas demais)
+        long factor = 1;
+        for (int scale = 0; scale <= MAX_SCALE; scale++, factor *= 10) {
+            boolean exact = true;
+            for (double value : values) {
+                double scaled = value * factor;
+                if (Double.isNaN(value) || Math.abs(scaled) >= 0x1p53
+                        || Double.doubleToRawLongBits((double) Math.round(scaled) / factor) != Double.doubleToRawLongBits(value)) {
+                    exact = false;
+                    break;
+                }
+            }
+            if (exact) {
+                return scale;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] encodeFixed(double[] values, int scale) {
+        // Ponto fixo: preços com poucas casas viram inteiros (ex.: centavos), gravados pela diferença para o
+        // anterior; um passeio aleatório de centavos custa ~9 bits por valor, contra ~40 do XOR de double
+        BitWriter out = new BitWriter();
+        long factor = pow10(scale);
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            long value = Math.round(values[i] * factor);
+            if (i == 0) {
+                out.write(value, 64);
+            } else {
+                writeVarying(out, value - previous);
+            }
+            previous = value;
+        }
+        return out.toByteArray();
+    }
+
+    private static double[] decodeFixed(byte[] bytes, int rows, int scale) {
+        BitReader in = new BitReader(bytes);
+        double[] values = new double[rows];
+        long factor = pow10(scale);
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous = i == 0 ? in.read(64) : previous + readVarying(in);
+            values[i] = (double) previous / factor;
+        }
+        return values;
+    }
+
+    private static long pow10(int scale) {
+        long factor = 1;
+        for (int i = 0; i < scale; i++) {
+            factor *= 10;
+        }
+        return factor;
+    }
+
+    private static byte[] encodeValues(double[] values) {
+        // XOR com o valor anterior (Gorilla): preço repetido custa 1 bit; os demais, só os bits significativos
+        BitWriter out = new BitWriter();
+        long previous = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 0; i < values.length; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            if (i == 0) {
+                out.write(bits, 64);
+            } else {
+                long xor = bits ^ previous;
+                if (xor == 0) {
+                    out.write(0b0, 1);
+                } else {
+                    int currentLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int currentTrailing = Long.numberOfTrailingZeros(xor);
+                    if (leading >= 0 && currentLeading >= leading && currentTrailing >= trailing) {
+                        // Bits significativos cabem na janela anterior
+                        out.write(0b10, 2);
+                        out.write(xor >>> trailing, 64 - leading - trailing);
+                    } else {
+                        // Nova janela: [zeros à esquerda (5 bits)][tamanho - 1 (6 bits)][bits significativos]
+                        leading = currentLeading;
+                        trailing = currentTrailing;
+                        int significant = 64 - leading - trailing;
+                        out.write(0b11, 2);
+                        out.write(leading, 5);
+                        out.write(significant - 1, 6);
+                        out.write(xor >>> trailing, significant);
+                    }
+                }
+            }
+            previous = bits;
+        }
+        return out.toByteArray();
+    }
+
+    private static double[] decodeValues(byte[] bytes, int rows) {
+        BitReader in = new BitReader(bytes);
+        double[] values = new double[rows];
+        long previous = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i == 0) {
+                previous = in.read(64);
+            } else if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    int significant = (int) in.read(6) + 1;
+                    trailing = 64 - leading - significant;
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+        return values;
+    }
+
+    private static class BitWriter {
+
+        private byte[] bytes = new byte[64];
+
+        private long position;
+
+        void write(long value, int count) {
+            // Grava os "count" bits menos significativos de value, do mais significativo para o menos
+            for (int bit = count - 1; bit >= 0; bit--) {
+                int index = (int) (position >>> 3);
+                if (index == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                if (((value >>> bit) & 1) != 0) {
+                    bytes[index] |= (byte) (0x80 >>> (position & 7));
+                }
+                position++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((position + 7) >>> 3));
+        }
+    }
+
+    private static class BitReader {
+
+        private final byte[] bytes;
+
+        private long position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                int bit = (bytes[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1;
+                value = (value << 1) | bit;
+                position++;
+            }
+            return value;
+        }
+
+        long readSigned(int count) {
+            // Complemento de dois em "count" bits
+            long value = read(count);
+            return (value << (64 - count)) >> (64 - count);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConcurrencyLimiter {
+
+    public static final int INITIAL_LIMIT = Integer.getInteger("gemini.concurrency.initial", 8);
+
+    public static final int MIN_LIMIT = Integer.getInteger("gemini.concurrency.min", 1);
+
+    public static final int MAX_LIMIT = Integer.getInteger("gemini.concurrency.max", 256);
+
+    // Quanto a latência pode crescer em relação à referência antes de reduzir o limite
+    public static final double LATENCY_TOLERANCE = Double.parseDouble(System.getProperty("gemini.concurrency.tolerance", "2.0"));
+
+    // Fator de redução multiplicativa em caso de sobrecarga (429, 503, timeout)
+    public static final double BACKOFF_RATIO = Double.parseDouble(System.getProperty("gemini.concurrency.backoff", "0.5"));
+
+    private static ConcurrencyLimiter defaultLimiter;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public static synchronized ConcurrencyLimiter getDefault() {
+        if (defaultLimiter == null) {
+            defaultLimiter = new ConcurrencyLimiter();
+        }
+        return defaultLimiter;
+    }
+
+    public CompletableFuture<Permit> acquire(String model) {
+        // Aguarda uma vaga entre as requisições simultâneas permitidas para o endpoint do modelo
+        return limits.computeIfAbsent(model, k -> new Limit()).acquire();
+    }
+
+    public int getLimit(String model) {
+        Limit limit = limits.get(model);
+        return limit == null ? INITIAL_LIMIT : limit.currentLimit();
+    }
+
+    public int getInFlight(String model) {
+        Limit limit = limits.get(model);
+        return limit == null ? 0 : limit.inFlight();
+    }
+
+    public int getQueueDepth(String model) {
+        Limit limit = limits.get(model);
+        return limit == null ? 0 : limit.queueDepth();
+    }
+
+    public Map<String, int[]> snapshot() {
+        // modelo -> {limite, em andamento, fila}
+        Map<String, int[]> snapshot = new TreeMap<>();
+        limits.forEach((model, limit) -> snapshot.put(model, new int[]{limit.currentLimit(), limit.inFlight(), limit.queueDepth()}));
+        return snapshot;
+    }
+
+    public String stats() {
+        StringBuilder sb = new StringBuilder("concorrência:");
+        snapshot().forEach((model, values) -> sb.append(String.format(" %s limite=%d em-andamento=%d fila=%d;", model, values[0], values[1], values[2])));
+        return sb.toString();
+    }
+
+    public interface Permit {
+        // Devolve a vaga informando a latência observada e se houve sobrecarga (429/503/timeout)
+        void release(long latencyNanos, boolean overloaded);
+
+        // Devolve a vaga sem amostra (chamada cancelada ou falha não relacionada à carga)
+        void ignore();
+    }
+
+    private static class Limit {
+
+        private double limit = INITIAL_LIMIT;
+
+        private int inFlight;
+
+        // Latência de referência (média móvel lenta) das respostas bem-sucedidas
+        private double longRttNanos;
+
+        private final ArrayDeque<CompletableFuture<Permit>> queue = new ArrayDeque<>();
+
+        CompletableFuture<Permit> acquire() {
+            CompletableFuture<Permit> waiter = new CompletableFuture<>();
+            synchronized (this) {
+                if (queue.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                } else {
+                    queue.add(waiter);
+                    return waiter;
+                }
+            }
+            waiter.complete(newPermit());
+            return waiter;
+        }
+
+        synchronized int currentLimit() {
+            return (int) limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int queueDepth() {
+            return queue.size();
+        }
+
+        private Permit newPermit() {
+            return new Permit() {
+                private boolean released;
+
+                @Override
+                public void release(long latencyNanos, boolean overloaded) {
+                    if (!released) {
+                        released = true;
+                        onRelease(latencyNanos, overloaded, true);
+                    }
+                }
+
+                @Override
+                public void ignore() {
+                    if (!released) {
+                        released = true;
+                        onRelease(0, false, false);
+                    }
+                }
+            };
+        }
+
+        private void onRelease(long latencyNanos, boolean overloaded, boolean sample) {
+            synchronized (this) {
+                int used = inFlight;
+                inFlight--;
+                if (sample) {
+                    adjust(latencyNanos, overloaded, used);
+                }
+            }
+            grant();
+        }
+
+        private void adjust(long latencyNanos, boolean overloaded, int used) {
+            // AIMD: sobrecarga reduz o limite de forma multiplicativa
+            if (overloaded) {
+                limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                return;
+            }
+
+            // Gradiente: compara a amostra com a latência de referência
+            // gradiente = 1 enquanto a latência estiver dentro da tolerância; cai até 0.5 quando ela dispara
+            if (longRttNanos == 0) {
+                longRttNanos = latencyNanos;
+            } else {
+                longRttNanos = longRttNanos * 0.95 + latencyNanos * 0.05;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * longRttNanos / Math.max(1, latencyNanos)));
+
+            // Só cresce quando o limite atual está de fato sendo usado (evita inflar sem demanda)
+            double growth = used >= limit / 2 ? Math.sqrt(limit) : 0;
+            double target = limit * gradient + growth;
+
+            // Suavização para não oscilar a cada amostra
+            limit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, limit * 0.8 + target * 0.2));
+        }
+
+        private void grant() {
+            // Libera a fila enquanto houver vagas; esperas já canceladas são descartadas
+            while (true) {
+                CompletableFuture<Permit> next;
+                synchronized (this) {
+                    if (queue.isEmpty() || inFlight >= (int) limit) {
+                        return;
+                    }
+                    next = queue.poll();
+                    inFlight++;
+                }
+                if (!next.complete(newPermit())) {
+                    synchronized (this) {
+                        inFlight--;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.time.Duration;
+
+public class ContextCache {
+
+    // Envia o prefixo estável dos prompts uma única vez por execução (false = prefixo repetido em cada chamada)
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("gemini.contextCache", "true"));
+
+    // Validade do cache no servidor; depois dela as chamadas voltam a levar o prefixo no prompt
+    public static final Duration TTL = Duration.ofMinutes(Long.getLong("gemini.contextCache.ttlMinutes", 60));
+
+    // A API só aceita caches a partir de um mínimo de tokens; prefixos menores seguem no próprio prompt
+    public static final long MIN_TOKENS = Long.getLong("gemini.contextCache.minTokens", 4096);
+
+    private final String model;
+
+    private final String prefix;
+
+    private final String hash;
+
+    private volatile String name;
+
+    private boolean closed;
+
+    private ContextCache(String model, String prefix) {
+        this.model = model;
+        this.prefix = prefix;
+        this.hash = ResponseCache.sha256(prefix);
+    }
+
+    public static ContextCache create(String model, String prefix) {
+        // Envia o prefixo ao endpoint cachedContents; sem cache (desativado, pequeno ou erro),
+        // o prefixo é concatenado ao prompt de cada chamada e o resultado é o mesmo
+        ContextCache context = new ContextCache(model, prefix);
+        if (!ENABLED || TokenEstimator.estimate(model, prefix) < MIN_TOKENS) {
+            return context;
+        }
+
+        // Criação sem bloquear: as chamadas feitas antes de o cache ficar pronto levam o prefixo no prompt
+        GeminiClient.getDefault().createCachedContentAsync(model, prefix, TTL).whenComplete((created, error) -> {
+            if (error != null) {
+                System.err.println("Cache de contexto indisponível, prefixo enviado em cada chamada: " + App.rootMessage(error));
+                return;
+            }
+            synchronized (context) {
+                if (!context.closed) {
+                    context.name = created;
+                    System.out.println("Contexto compartilhado em cache no servidor: " + created);
+                    return;
+                }
+            }
+            // Execução terminou antes da criação: o cache criado tarde é removido em vez de esperar o TTL
+            context.delete(created);
+        });
+        return context;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getHash() {
+        // Identifica o prefixo na chave do cache de respostas (o nome no servidor muda a cada execução)
+        return hash;
+    }
+
+    public String getName() {
+        // Nome "cachedContents/..." no servidor, ou null se o prefixo segue no prompt
+        return name;
+    }
+
+    public String inline(String prompt) {
+        // Prompt completo para envio sem cache de contexto
+        return prefix + prompt;
+    }
+
+    public void invalidate(String expired) {
+        // Cache expirado ou removido no servidor: as próximas chamadas levam o prefixo no prompt
+        if (expired != null && expired.equals(name)) {
+            name = null;
+            System.err.println("Cache de contexto " + expired + " não está mais disponível; prefixo enviado em cada chamada.");
+        }
+    }
+
+    public void close() {
+        // Remove o cache no servidor ao fim da execução (o TTL cobre execuções interrompidas)
+        String current;
+        synchronized (this) {
+            closed = true;
+            current = name;
+            name = null;
+        }
+        if (current != null) {
+            delete(current);
+        }
+    }
+
+    private void delete(String current) {
+        try {
+            GeminiClient.getDefault().deleteCachedContentAsync(current).join();
+        } catch (Exception e) {
+            System.err.println("Falha ao remover cache de contexto " + current + ": " + App.rootMessage(e));
+        }
+    }
+}
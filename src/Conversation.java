@@ -0,0 +1,201 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class Conversation {
+
+    // Limite padrão de tokens do histórico reenviado a cada turno; acima dele os turnos antigos são aparados
+    public static final long MAX_HISTORY_TOKENS = Long.getLong("gemini.conversation.maxTokens", 32_000);
+
+    public enum Trim {
+        // Descarta os turnos mais antigos (sem custo adicional)
+        DROP,
+        // Substitui os turnos mais antigos por um resumo gerado pelo modelo
+        SUMMARIZE
+    }
+
+    private final String model;
+
+    private final double temperature;
+
+    private String systemInstruction;
+
+    private String responseMimeType = "text/plain";
+
+    private long maxHistoryTokens = MAX_HISTORY_TOKENS;
+
+    private Trim trim = Trim.DROP;
+
+    private GeminiOptions options = new GeminiOptions();
+
+    // Turnos {role, parts} no formato do campo "contents" da API
+    private JSONArray history = new JSONArray();
+
+    // Turno em andamento: o próximo só é enviado depois que a resposta anterior entrou no histórico
+    private CompletableFuture<String> last = CompletableFuture.completedFuture(null);
+
+    public Conversation(String model, double temperature) {
+        this.model = model;
+        this.temperature = temperature;
+    }
+
+    public Conversation system(String systemInstruction) {
+        // Instrução de sistema (systemInstruction): vale para todos os turnos sem ocupar o histórico
+        this.systemInstruction = systemInstruction;
+        return this;
+    }
+
+    public Conversation responseMimeType(String responseMimeType) {
+        this.responseMimeType = responseMimeType;
+        return this;
+    }
+
+    public Conversation maxHistoryTokens(long maxHistoryTokens) {
+        this.maxHistoryTokens = maxHistoryTokens;
+        return this;
+    }
+
+    public Conversation trim(Trim trim) {
+        this.trim = trim;
+        return this;
+    }
+
+    public Conversation options(GeminiOptions options) {
+        // Timeout, cache, hedge e orçamento aplicados a cada turno
+        this.options = options;
+        return this;
+    }
+
+    public synchronized Conversation add(String role, String text) {
+        // Acrescenta um turno pronto ("user" ou "model"), ex.: exemplos few-shot
+        history.put(turn(role, text));
+        return this;
+    }
+
+    public String send(String message) {
+        try {
+            return sendAsync(message).join();
+        } catch (Exception e) {
+            System.err.println("Erro ao invocar Gemini: " + App.rootMessage(e));
+            return null;
+        }
+    }
+
+    public synchronized CompletableFuture<String> sendAsync(String message) {
+        // Turnos em sequência: a mensagem só segue depois da resposta anterior
+        CompletableFuture<String> next = last.handle((previous, error) -> null)
+            .thenCompose(v -> exchange(message, contents -> App.getGeminiConversationAsync(model, temperature, systemInstruction, contents, responseMimeType, options)));
+        last = next;
+        return next;
+    }
+
+    public synchronized CompletableFuture<String> streamAsync(String message, Consumer<String> onText) {
+        // Resposta entregue em trechos ao callback e registrada inteira no histórico ao final
+        CompletableFuture<String> next = last.handle((previous, error) -> null)
+            .thenCompose(v -> exchange(message, contents -> App.streamGeminiConversationAsync(model, temperature, systemInstruction, contents, responseMimeType, onText, options)));
+        last = next;
+        return next;
+    }
+
+    public synchronized JSONArray getHistory() {
+        return new JSONArray(history.toList());
+    }
+
+    public synchronized long estimateTokens() {
+        return TokenEstimator.estimate(model, (systemInstruction != null ? systemInstruction : "") + text(history, 0, history.length()));
+    }
+
+    private CompletableFuture<String> exchange(String message, Function<JSONArray, CompletableFuture<String>> call) {
+        // FASE 1: Histórico dentro do orçamento antes de acrescentar a nova mensagem
+        return trimHistoryAsync(TokenEstimator.estimate(model, message)).thenCompose(v -> {
+            JSONArray contents;
+            synchronized (this) {
+                contents = getHistory().put(turn("user", message));
+            }
+
+            // FASE 2: Envio do histórico completo; a conversa só avança se a chamada der certo
+            return call.apply(contents).thenApply(reply -> {
+                synchronized (this) {
+                    history.put(turn("user", message));
+                    history.put(turn("model", reply));
+                }
+                return reply;
+            });
+        });
+    }
+
+    private synchronized CompletableFuture<Void> trimHistoryAsync(long incoming) {
+        // Apara turnos do início até o histórico caber no orçamento. O corte para sempre antes de um turno "user"
+        // (a conversa enviada precisa começar por ele), e não de 2 em 2: add() pode ter deixado turnos fora de pares
+        long limit = maxHistoryTokens - incoming;
+        int count = 0;
+        while (count < history.length() && estimate(count) > limit) {
+            count++;
+            while (count < history.length() && !"user".equals(history.getJSONObject(count).getString("role"))) {
+                count++;
+            }
+        }
+        int cut = count;
+        if (cut == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (trim == Trim.DROP) {
+            removeOldest(cut, null);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Resumo dos turnos removidos; se a chamada falhar, os turnos são apenas descartados
+        String removed = text(history, 0, cut);
+        return App.getGeminiCompletionAsync(model, temperature,
+                "Resuma de forma objetiva a conversa abaixo, preservando fatos, decisões e pendências:\n\n" + removed,
+                "text/plain", false, new GeminiOptions().budget(options.getBudget()))
+            .exceptionally(error -> null)
+            .thenAccept(summary -> removeOldest(cut, summary));
+    }
+
+    private synchronized void removeOldest(int cut, String summary) {
+        for (int i = 0; i < cut; i++) {
+            history.remove(0);
+        }
+        if (summary != null) {
+            // O resumo entra como primeira parte do turno "user" que passa a abrir a conversa
+            JSONObject part = new JSONObject().put("text", "Resumo da conversa anterior:\n" + summary);
+            JSONObject first = history.length() > 0 ? history.getJSONObject(0) : null;
+            if (first != null && "user".equals(first.getString("role"))) {
+                JSONArray parts = new JSONArray().put(part);
+                first.getJSONArray("parts").forEach(parts::put);
+                first.put("parts", parts);
+            } else {
+                JSONArray rebuilt = new JSONArray().put(new JSONObject().put("role", "user").put("parts", new JSONArray().put(part)));
+                history.forEach(rebuilt::put);
+                history = rebuilt;
+            }
+        }
+        System.out.println("Histórico da conversa aparado: " + cut + " turnos " + (summary != null ? "resumidos." : "descartados."));
+    }
+
+    private long estimate(int from) {
+        return TokenEstimator.estimate(model, (systemInstruction != null ? systemInstruction : "") + text(history, from, history.length()));
+    }
+
+    private static String text(JSONArray turns, int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            JSONObject turn = turns.getJSONObject(i);
+            sb.append(turn.getString("role")).append(": ");
+            JSONArray parts = turn.getJSONArray("parts");
+            for (int j = 0; j < parts.length(); j++) {
+                sb.append(parts.getJSONObject(j).optString("text")).append('\n');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static JSONObject turn(String role, String text) {
+        return new JSONObject().put("role", role).put("parts", new JSONArray().put(new JSONObject().put("text", text)));
+    }
+}
@@ -1,6 +1,12 @@
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 
@@ -14,10 +20,36 @@ public class DeepSearchAgent {
 
     private static final String RESPONSE_FILE = "response.md";
 
-    private static final int PRODUNDIDADE = 2;
+    // Incrementar quando os prompts do plano ou das pesquisas mudarem: invalida o diário de uma execução interrompida
+    private static final String PROMPT_VERSION = "1";
+
+    // Níveis da árvore de pesquisa: cada pesquisa concluída pode gerar subconsultas até esta profundidade
+    private static final int PRODUNDIDADE = ResearchScheduler.DEPTH;
+
+    // Prompts gerados pelo plano e subconsultas geradas por pesquisa
+    private static final int AMPLITUDE = ResearchScheduler.BREADTH;
+
+    // Gera cada pesquisa em paralelo com a busca web em vez de esperar por ela (o resultado da busca é anexado)
+    private static final boolean BUSCA_PARALELA = Boolean.getBoolean("agent.research.concurrentSearch");
+
+    // Síntese em etapas: cada ramo concluído é sintetizado enquanto os demais ainda pesquisam,
+    // e a consolidação final recebe as sínteses parciais (false = uma única síntese de todas as pesquisas)
+    private static final boolean SINTESE_INCREMENTAL = Boolean.parseBoolean(System.getProperty("agent.research.pipelinedSynthesis", "true"));
+
+    // Orçamento de tokens da execução (agent.tokenBudget); null = sem limite
+    private static final TokenBudget BUDGET = TokenBudget.forRun("DeepSearchAgent");
+
+    // Pesquisas gravadas à medida que concluem; substituídas pelo relatório final ao concluir
+    private static ReportWriter report;
+
+    // Diário da execução: plano e pesquisas concluídas sobrevivem a falhas e interrupções (retomada com --resume)
+    private static RunJournal journal;
 
     public static void main(String[] args) {
         try {
+            // Com --resume, o plano e as pesquisas já concluídas para o mesmo tema não são refeitos
+            journal = RunJournal.open("DeepSearchAgent", MODEL, PROMPT_VERSION, USER_PROMPT, RunJournal.resumeRequested(args));
+            
             // FASE 1: PLANEJAMENTO ESTRATÉGICO DA PESQUISA
             System.out.println("Planejando a pesquisa...");
             
@@ -28,19 +60,20 @@ public class DeepSearchAgent {
                 "então as respostas devem conter conteúdo relevante ao tema original detalhado, " +
                 "incluindo no corpo do relatório os links de referências de livros recomendados em português, artigos, estudos e sites relevantes. " +
                 "Retorne **somente** um array JSON de %d strings. Exemplo de formato esperado:\n[\"prompt1\", \"prompt2\", …]",
-                PRODUNDIDADE,
+                AMPLITUDE,
                 USER_PROMPT,
-                PRODUNDIDADE
+                AMPLITUDE
             );
             
             // Gera array de prompts estratégicos usando capacidades de planejamento da IA
-            String promptsJson = App.getGeminiCompletion(
+            String promptsJson = journal.step("plano", USER_PROMPT, () -> App.getGeminiCompletion(
                 MODEL, 
                 TEMPERATURE, 
                 generationInstruction, 
                 "application/json", 
-                false  // Planejamento baseado em conhecimento, não busca
-            );
+                false,  // Planejamento baseado em conhecimento, não busca
+                new GeminiOptions().budget(BUDGET)
+            ));
 
             // Salva apenas o relatório consolidado (não as pesquisas intermediárias)
             Files.writeString(Paths.get("promptsJson"), promptsJson);
@@ -48,27 +81,56 @@ public class DeepSearchAgent {
             // FASE 2: EXECUÇÃO DISTRIBUÍDA DAS PESQUISAS
             // Parseia array JSON de prompts gerados
             JSONArray promptsArray = new JSONArray(promptsJson);
-            StringBuilder respostaAcumulada = new StringBuilder();
-            
-            // Itera sobre cada prompt executando pesquisa individualizada
+            List<String> prompts = new ArrayList<>();
             for (int i = 0; i < promptsArray.length(); i++) {
-                String prompt = promptsArray.getString(i);
-                System.out.println((i + 1) + " Data/hora atual: " + new java.util.Date() + ". Pesquisando por '" + prompt + "'...");
-
-                // Executa pesquisa com busca web integrada
-                String resposta = App.getGeminiCompletion(
-                    MODEL, 
-                    TEMPERATURE, 
-                    prompt, 
-                    "text/plain", 
-                    true  // BUSCA HABILITADA - acesso a informações atuais
-                );
-                
-                // Acumula resposta com estrutura organizada
-                respostaAcumulada
-                    .append("## Pesquisa ").append(i + 1).append("\n")
-                    .append("**Prompt:** ").append(prompt).append("\n\n")
-                    .append(resposta).append("\n\n");
+                prompts.add(promptsArray.getString(i));
+            }
+            
+            // Cada pesquisa concluída vai para o arquivo de resposta na ordem de criação (progresso visível e
+            // preservado se a execução for interrompida); ao final, o relatório consolidado a substitui
+            report = ReportWriter.open(Paths.get(RESPONSE_FILE), "# Pesquisa: " + USER_PROMPT + "\n\n_Relatório em andamento: pesquisas concluídas._\n\n");
+            
+            // Árvore de pesquisa: os prompts do plano seguem em paralelo e cada resultado pode gerar
+            // subconsultas até PRODUNDIDADE níveis, com subconsultas repetidas podadas e orçamento global
+            // de chamadas, tokens e tempo; a consolidação começa quando a árvore assenta ou o orçamento acaba
+            Map<ResearchScheduler.Node, CompletableFuture<String>> sinteses = new ConcurrentHashMap<>();
+            ResearchScheduler scheduler = new ResearchScheduler(
+                DeepSearchAgent::pesquisar,
+                DeepSearchAgent::desdobrar,
+                node -> report.write(node.getSequence(), secao(node.getId(), node.getQuery(), node.getResult())),
+                PRODUNDIDADE,
+                AMPLITUDE,
+                ResearchScheduler.MAX_CALLS,
+                BUDGET
+            );
+            if (SINTESE_INCREMENTAL) {
+                // Ramo concluído (prompt do plano e subconsultas): síntese parcial em paralelo com os ramos restantes
+                scheduler.onBranchSettled(ramo -> sinteses.put(ramo, sintetizar(ramo)));
+            }
+            List<ResearchScheduler.Node> arvore = scheduler.run(prompts, ResearchScheduler.MAX_TIME);
+            System.out.println("Pesquisa: " + scheduler.stats());
+            
+            // Acumula respostas em pré-ordem: cada pesquisa seguida das suas subconsultas
+            // Ramos com síntese parcial pronta entram só com ela; os demais (ex.: o último a concluir)
+            // entram com as pesquisas completas, sem esperar a síntese, que é cancelada
+            StringBuilder respostaAcumulada = new StringBuilder();
+            int sintetizados = 0;
+            for (ResearchScheduler.Node ramo : arvore) {
+                CompletableFuture<String> sintese = sinteses.get(ramo);
+                if (sintese != null && sintese.isDone() && !sintese.isCompletedExceptionally() && sintese.join() != null) {
+                    respostaAcumulada.append("## Síntese da pesquisa " + ramo.getId() + "\n" + "**Prompt:** " + ramo.getQuery() + "\n\n" + sintese.join() + "\n\n");
+                    sintetizados++;
+                    continue;
+                }
+                if (sintese != null) {
+                    sintese.cancel(true);
+                }
+                for (ResearchScheduler.Node node : ResearchScheduler.flatten(List.of(ramo))) {
+                    respostaAcumulada.append(secao(node.getId(), node.getQuery(), node.getResult()));
+                }
+            }
+            if (SINTESE_INCREMENTAL) {
+                System.out.println("Síntese: " + sintetizados + " de " + arvore.size() + " ramos consolidados durante a pesquisa.");
             }
             
             // FASE 3: SÍNTESE INTELIGENTE DO RELATÓRIO FINAL
@@ -88,19 +150,134 @@ public class DeepSearchAgent {
                 TEMPERATURE, 
                 promptFinal, 
                 "text/plain", 
-                false  // Síntese baseada no conteúdo já pesquisado
+                false,  // Síntese baseada no conteúdo já pesquisado
+                new GeminiOptions().budget(BUDGET)
             );
             
             // FASE 4: PERSISTÊNCIA DO RESULTADO FINAL
+            // Sem síntese, as pesquisas já gravadas permanecem como resultado
+            if (respostaFinal == null) {
+                report.close();
+                System.err.println("Síntese não gerada; pesquisas mantidas em " + RESPONSE_FILE);
+                return;
+            }
+            
+            // Lista única de referências de todas as buscas, sem repetições e ordenada pelas mais citadas
+            SearchReferences referencias = SearchReferences.getDefault();
+            if (referencias.size() > 0) {
+                respostaFinal = respostaFinal + "\n\n" + referencias.toMarkdown();
+                System.out.println("Referências: " + referencias.stats());
+            }
+            
             // Salva apenas o relatório consolidado (não as pesquisas intermediárias)
-            Files.writeString(Paths.get(RESPONSE_FILE), respostaFinal);
+            report.replaceWith(respostaFinal);
+            journal.complete();
             
             // Feedback de conclusão com timestamp
             System.out.println("Resultados salvos em " + new Date() + " no arquivo " + RESPONSE_FILE);
+            if (BUDGET != null) {
+                System.out.println(BUDGET.stats());
+            }
             
         } catch (Exception e) {
             // TRATAMENTO DE ERROS: Captura falhas em qualquer fase do processo
             System.err.println("Erro no DeepSearchAgent: " + e.getMessage());
+        } finally {
+            // Mantém o diário no disco se a execução não chegou ao fim
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Erro de I/O: " + e.getMessage());
+                }
+            }
+            // Mantém no arquivo as pesquisas já gravadas, mesmo após falha
+            if (report != null) {
+                try {
+                    report.close();
+                } catch (IOException e) {
+                    System.err.println("Erro de I/O: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static CompletableFuture<String> pesquisar(String prompt) {
+        // Pesquisa com busca web integrada (ou reaproveitada da execução interrompida)
+        String concluida = journal.get("pesquisa", prompt);
+        if (concluida != null) {
+            return CompletableFuture.completedFuture(concluida);
+        }
+        System.out.println("Data/hora atual: " + new java.util.Date() + ". Pesquisando por '" + prompt + "'...");
+        CompletableFuture<String> pesquisa = App.getGeminiCompletionAsync(
+            MODEL, 
+            TEMPERATURE, 
+            prompt, 
+            "text/plain", 
+            true,  // BUSCA HABILITADA - acesso a informações atuais
+            new GeminiOptions().budget(BUDGET).concurrentSearch(BUSCA_PARALELA)
+        );
+        pesquisa.thenAccept(resposta -> journal.record("pesquisa", prompt, resposta));
+        return pesquisa;
+    }
+
+    private static CompletableFuture<List<String>> desdobrar(ResearchScheduler.Node node, int amplitude) {
+        // Subconsultas que aprofundam o resultado de uma pesquisa concluída
+        String concluido = journal.get("desdobramento", node.getQuery());
+        CompletableFuture<String> json;
+        if (concluido != null) {
+            json = CompletableFuture.completedFuture(concluido);
+        } else {
+            String instrucao = String.format(
+                "Tema original: %s\n\nPesquisa realizada: %s\n\nResultado:\n%s\n\n" +
+                "Retorne **somente** um array JSON com até %d prompts de pesquisa complementares otimizados para o Gemini, " +
+                "que aprofundem pontos relevantes ao tema original ainda não cobertos pelo resultado acima, sem repetir a pesquisa realizada. " +
+                "Exemplo de formato esperado:\n[\"prompt1\", \"prompt2\", …]",
+                USER_PROMPT,
+                node.getQuery(),
+                node.getResult(),
+                amplitude
+            );
+            json = App.getGeminiCompletionAsync(MODEL, TEMPERATURE, instrucao, "application/json", false, new GeminiOptions().budget(BUDGET));
+            json.thenAccept(resposta -> journal.record("desdobramento", node.getQuery(), resposta));
+        }
+        return json.thenApply(resposta -> {
+            List<String> subconsultas = new ArrayList<>();
+            JSONArray array = new JSONArray(resposta);
+            for (int i = 0; i < array.length(); i++) {
+                subconsultas.add(array.getString(i));
+            }
+            return subconsultas;
+        });
+    }
+
+    private static CompletableFuture<String> sintetizar(ResearchScheduler.Node ramo) {
+        // Síntese parcial de um ramo concluído (ou reaproveitada da execução interrompida)
+        String concluida = journal.get("sintese", ramo.getQuery());
+        if (concluida != null) {
+            return CompletableFuture.completedFuture(concluida);
         }
+        StringBuilder pesquisas = new StringBuilder();
+        for (ResearchScheduler.Node node : ResearchScheduler.flatten(List.of(ramo))) {
+            if (node.getResult() != null) {
+                pesquisas.append(secao(node.getId(), node.getQuery(), node.getResult()));
+            }
+        }
+        if (pesquisas.length() == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String instrucao = String.format(
+            "Tema original: %s\n\nSintetize de forma detalhada e objetiva as pesquisas abaixo, que serão combinadas com outras " +
+            "em um relatório final. Preserve fatos, dados, livros recomendados e os links de referências.\n\n%s",
+            USER_PROMPT,
+            pesquisas.toString()
+        );
+        CompletableFuture<String> sintese = App.getGeminiCompletionAsync(MODEL, TEMPERATURE, instrucao, "text/plain", false, new GeminiOptions().budget(BUDGET));
+        sintese.thenAccept(resposta -> journal.record("sintese", ramo.getQuery(), resposta));
+        return sintese;
+    }
+
+    private static String secao(String id, String prompt, String resposta) {
+        return "## Pesquisa " + id + "\n" + "**Prompt:** " + prompt + "\n\n" + resposta + "\n\n";
     }
 }
\ No newline at end of file
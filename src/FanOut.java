@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class FanOut {
+
+    // Quantidade máxima de tarefas simultâneas dos agentes (1 = modo sequencial)
+    public static final int PARALLELISM = Math.max(1, Integer.getInteger("agent.parallelism", 8));
+
+    public static <T, R> List<R> map(List<T> items, int parallelism, Function<T, R> task) throws InterruptedException, ExecutionException {
+        return map(items::forEach, parallelism, task);
+    }
+
+    public static <T, R> List<R> map(Consumer<Consumer<T>> source, int parallelism, Function<T, R> task) throws InterruptedException, ExecutionException {
+        // FASE 1: Uma thread virtual por item, com um semáforo limitando quantas executam ao mesmo tempo.
+        // A fonte entrega os itens na thread chamadora e cada um é submetido assim que chega
+        // (ex.: arquivos encontrados pelo ProjectScanner enquanto a varredura continua)
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<Future<R>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            source.accept(item -> futures.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return task.apply(item);
+                } finally {
+                    permits.release();
+                }
+            })));
+
+            // FASE 2: Resultados coletados na ordem de entrega dos itens, independente da ordem de conclusão
+            List<R> results = new ArrayList<>(futures.size());
+            try {
+                for (Future<R> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (Exception e) {
+                // Em caso de falha ou interrupção, as tarefas restantes são abandonadas
+                futures.forEach(future -> future.cancel(true));
+                throw e;
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class GeminiClient {
+
+    public static final String BASE_URL = System.getProperty("gemini.baseUrl", "https://generativelanguage.googleapis.com/v1beta/");
+
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(Long.getLong("gemini.http.connectTimeout", 10));
+
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(Long.getLong("gemini.http.requestTimeout", 300));
+
+    public static final int POOL_SIZE = Integer.getInteger("gemini.http.poolSize", 16);
+
+    public static final Duration KEEP_ALIVE = Duration.ofSeconds(Long.getLong("gemini.http.keepAlive", 120));
+
+    public static final int MAX_RETRIES = Integer.getInteger("gemini.retry.max", 5);
+
+    public static final Duration BASE_BACKOFF = Duration.ofMillis(Long.getLong("gemini.retry.baseMillis", 1000));
+
+    public static final Duration MAX_BACKOFF = Duration.ofSeconds(Long.getLong("gemini.retry.maxSeconds", 60));
+
+    private static GeminiClient defaultClient;
+
+    private final HttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    private final Duration requestTimeout;
+
+    // Chave API resolvida uma única vez por cliente (arquivo ou stdin), e não a cada tentativa
+    private volatile String apiKey;
+
+    public GeminiClient(Duration connectTimeout, Duration requestTimeout, int poolSize, Duration keepAlive, ExecutorService executor) {
+        // FASE 1: Configuração do pool de conexões
+        // O HttpClient do JDK lê estas propriedades uma única vez, na criação do primeiro cliente,
+        // por isso só são definidas quando o usuário não as informou na linha de comando
+        setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(poolSize));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout.h2", String.valueOf(keepAlive.toSeconds()));
+
+        // FASE 2: Criação do cliente HTTP de longa duração
+        // HTTP/2 permite multiplexar várias requisições na mesma conexão TLS
+        this.executor = executor;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    public static synchronized GeminiClient getDefault() {
+        // Cria o cliente compartilhado na primeira utilização (threads virtuais por padrão)
+        if (defaultClient == null) {
+            defaultClient = new GeminiClient(
+                CONNECT_TIMEOUT,
+                REQUEST_TIMEOUT,
+                POOL_SIZE,
+                KEEP_ALIVE,
+                Executors.newVirtualThreadPerTaskExecutor()
+            );
+        }
+        return defaultClient;
+    }
+
+    public static synchronized void setDefault(GeminiClient client) {
+        // Permite substituir o cliente compartilhado (outro executor, timeouts, servidor de testes)
+        defaultClient = client;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public String generateContent(String model, JSONObject requestBody) throws IOException, InterruptedException {
+        // Versão bloqueante: aguarda a versão assíncrona (com limitador e novas tentativas)
+        try {
+            return generateContentAsync(model, requestBody, null).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<String> generateContentAsync(String model, JSONObject requestBody, Duration timeout) {
+        return generateContentAsync(model, requestBody, timeout, false);
+    }
+
+    public CompletableFuture<String> generateContentAsync(String model, JSONObject requestBody, Duration timeout, boolean hedge) {
+        // Versão não bloqueante: a resposta é entregue pelo executor do cliente (sendAsync)
+        // O cancelamento do futuro retornado interrompe a troca HTTP em andamento
+        String payload = requestBody.toString();
+        if (hedge) {
+            // Hedging: uma duplicata é enviada se a resposta passar do percentil recente de latência
+            // A duplicata faz uma única tentativa: só a principal repete após falhas
+            return RequestHedger.getDefault().hedge(model,
+                (duplicate, onSent) -> sendGenerateContent(model, payload, timeout, duplicate ? 0 : MAX_RETRIES, onSent));
+        }
+        return sendGenerateContent(model, payload, timeout, MAX_RETRIES, null);
+    }
+
+    private CompletableFuture<String> sendGenerateContent(String model, String payload, Duration timeout, int maxRetries, IntConsumer onSent) {
+        return withRetry(model, estimateTokens(model, payload), maxRetries, onSent, () -> {
+            // Endpoint: {BASE_URL}models/{model}:generateContent
+            HttpRequest request = newRequest(model, "generateContent", payload, timeout);
+            Timing timing = new Timing();
+            CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, timing.wrap(HttpResponse.BodyHandlers.ofString()));
+            CompletableFuture<String> body = exchange.thenApply(response -> {
+                timing.record(model, request, response.statusCode());
+                TraceRecorder.record("generateContent", model, payload, response.statusCode(), response.body());
+
+                // Status de erro vira GeminiException para que a política de novas tentativas decida
+                if (response.statusCode() / 100 != 2) {
+                    throw new CompletionException(new GeminiException(response.statusCode(), response.body(), retryAfter(response)));
+                }
+                return response.body();
+            });
+            return cancelling(timing.onFailure(model, body), exchange);
+        });
+    }
+
+    public CompletableFuture<Long> countTokensAsync(String model, String text) {
+        // Endpoint: {BASE_URL}models/{model}:countTokens (contagem exata, sem gerar resposta)
+        String payload = new JSONObject()
+            .put("contents", new JSONArray().put(new JSONObject().put("parts", new JSONArray().put(new JSONObject().put("text", text)))))
+            .toString();
+        return withRetry(model, 1, () -> {
+            HttpRequest request = newRequest(model, "countTokens", payload, null);
+            CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            CompletableFuture<Long> count = exchange.thenApply(response -> {
+                if (response.statusCode() / 100 != 2) {
+                    throw new CompletionException(new GeminiException(response.statusCode(), response.body(), retryAfter(response)));
+                }
+                return new JSONObject(response.body()).getLong("totalTokens");
+            });
+            return cancelling(count, exchange);
+        });
+    }
+
+    public CompletableFuture<String> createCachedContentAsync(String model, String text, Duration ttl) {
+        // Endpoint: {BASE_URL}cachedContents (cache de contexto no servidor); devolve o nome "cachedContents/..."
+        String payload = new JSONObject()
+            .put("model", "models/" + model)
+            .put("contents", new JSONArray().put(new JSONObject().put("role", "user")
+                .put("parts", new JSONArray().put(new JSONObject().put("text", text)))))
+            .put("ttl", ttl.toSeconds() + "s")
+            .toString();
+        return withRetry(model, estimateTokens(model, payload), () -> {
+            HttpRequest request = newApiRequest("cachedContents", "POST", payload, null);
+            CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            CompletableFuture<String> name = exchange.thenApply(response -> {
+                if (response.statusCode() / 100 != 2) {
+                    throw new CompletionException(new GeminiException(response.statusCode(), response.body(), retryAfter(response)));
+                }
+                return new JSONObject(response.body()).getString("name");
+            });
+            return cancelling(name, exchange);
+        });
+    }
+
+    public CompletableFuture<Void> deleteCachedContentAsync(String name) {
+        // Endpoint: DELETE {BASE_URL}cachedContents/{id}
+        HttpRequest request = newApiRequest(name, "DELETE", null, null);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(response -> {
+            if (response.statusCode() / 100 != 2) {
+                throw new CompletionException(new GeminiException(response.statusCode(), "", null));
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<JSONObject> streamGenerateContentAsync(String model, JSONObject requestBody, Duration timeout, Consumer<String> onText) {
+        return streamGenerateContentAsync(model, requestBody, timeout, false, onText);
+    }
+
+    public CompletableFuture<JSONObject> streamGenerateContentAsync(String model, JSONObject requestBody, Duration timeout, boolean hedge, Consumer<String> onText) {
+        // Endpoint: {BASE_URL}models/{model}:streamGenerateContent?alt=sse
+        // O corpo é consumido linha a linha; nenhum momento mantém a resposta inteira em memória
+        // Devolve o último evento, com usageMetadata (contagem final de tokens)
+        String payload = requestBody.toString();
+        if (!hedge) {
+            return sendStreamGenerateContent(model, payload, timeout, MAX_RETRIES, null, onText);
+        }
+
+        // Hedging no streaming: a tentativa que entregar o primeiro trecho passa a ser a única dona do callback.
+        // A outra falha no primeiro trecho (sem repassá-lo) e, se ainda não começou, nem é enviada,
+        // para que o chamador nunca receba texto de duas respostas diferentes
+        AtomicReference<Object> owner = new AtomicReference<>();
+        return RequestHedger.getDefault().hedge(model, (duplicate, onSent) -> {
+            if (owner.get() != null) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Streaming já em andamento pela requisição principal"));
+            }
+            Object attempt = new Object();
+            return sendStreamGenerateContent(model, payload, timeout, duplicate ? 0 : MAX_RETRIES, onSent, text -> {
+                if (!owner.compareAndSet(null, attempt) && owner.get() != attempt) {
+                    throw new IllegalStateException("Streaming já em andamento por outra requisição");
+                }
+                onText.accept(text);
+            });
+        });
+    }
+
+    private CompletableFuture<JSONObject> sendStreamGenerateContent(String model, String payload, Duration timeout, int maxRetries, IntConsumer onSent,
+            Consumer<String> onText) {
+        return withRetry(model, estimateTokens(model, payload), maxRetries, onSent, () -> {
+            // Registra se esta tentativa já entregou texto ao chamador
+            AtomicBoolean delivered = new AtomicBoolean();
+            GeminiStreamParser parser = new GeminiStreamParser(text -> {
+                delivered.set(true);
+                onText.accept(text);
+            });
+            HttpRequest request = newRequest(model, "streamGenerateContent?alt=sse", payload, timeout);
+            Timing timing = new Timing();
+            CompletableFuture<HttpResponse<Void>> exchange = httpClient.sendAsync(request, timing.wrap(HttpResponse.BodyHandlers.fromLineSubscriber(parser)));
+            CompletableFuture<JSONObject> done = exchange.thenApply(response -> {
+                timing.record(model, request, response.statusCode());
+                // O corpo do streaming não é retido; o trace guarda só o último evento (com usageMetadata)
+                TraceRecorder.record("streamGenerateContent", model, payload, response.statusCode(),
+                    parser.getLastChunk() != null ? parser.getLastChunk().toString() : parser.getErrorBody());
+                GeminiMetrics.getDefault().recordUsage(model, parser.getLastChunk());
+
+                // Status de erro chega como JSON comum, fora do protocolo SSE
+                // Nesse caso nenhum trecho foi entregue e a chamada pode ser repetida com segurança
+                if (response.statusCode() / 100 != 2) {
+                    throw new CompletionException(new GeminiException(response.statusCode(), parser.getErrorBody().trim(), retryAfter(response)));
+                }
+                if (parser.getFailure() != null) {
+                    throw parser.getFailure();
+                }
+                return parser.getLastChunk();
+            });
+            // Falha depois de texto entregue (ex.: conexão interrompida no meio do streaming) não é repetida:
+            // uma nova tentativa reenviaria todos os trechos desde o início e duplicaria o texto do chamador
+            CompletableFuture<JSONObject> attempt = timing.onFailure(model, done).exceptionallyCompose(error -> {
+                if (!delivered.get()) {
+                    return CompletableFuture.failedFuture(error);
+                }
+                Throwable cause = unwrap(error);
+                return CompletableFuture.failedFuture(new IllegalStateException("Streaming interrompido após texto parcial entregue: " + cause.getMessage(), cause));
+            });
+            return cancelling(attempt, exchange);
+        });
+    }
+
+    private <T> CompletableFuture<T> withRetry(String model, long tokens, Supplier<CompletableFuture<T>> attempt) {
+        return withRetry(model, tokens, MAX_RETRIES, null, attempt);
+    }
+
+    private <T> CompletableFuture<T> withRetry(String model, long tokens, int maxRetries, IntConsumer onSent, Supplier<CompletableFuture<T>> attempt) {
+        // Cada tentativa passa pelo limitador de taxa (fila) antes de ir para a rede
+        // onSent (opcional) é avisado quando cada tentativa sai para a rede, com o número dela
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((value, error) -> {
+            CompletableFuture<?> pending = current.get();
+            if (result.isCancelled() && pending != null) {
+                pending.cancel(true);
+            }
+        });
+        runAttempt(0, maxRetries, onSent, model, apiKey(), tokens, attempt, result, current);
+        return result;
+    }
+
+    private <T> void runAttempt(int attemptNo, int maxRetries, IntConsumer onSent, String model, String apiKey, long tokens, Supplier<CompletableFuture<T>> attempt,
+            CompletableFuture<T> result, AtomicReference<CompletableFuture<?>> current) {
+        RateLimiter limiter = RateLimiter.getDefault();
+        CompletableFuture<Void> permit = limiter.acquire(model, apiKey, tokens);
+        current.set(permit);
+        long queuedAt = System.nanoTime();
+        permit.thenCompose(v -> {
+            // Vaga no limite adaptativo de requisições simultâneas do modelo
+            CompletableFuture<ConcurrencyLimiter.Permit> slot = ConcurrencyLimiter.getDefault().acquire(model);
+            current.set(slot);
+            if (result.isDone()) {
+                slot.cancel(true);
+            }
+            return slot;
+        }).thenCompose(slot -> {
+            long start = System.nanoTime();
+            GeminiMetrics.getDefault().recordQueue(model, start - queuedAt);
+            CompletableFuture<T> call;
+            try {
+                call = attempt.get();
+            } catch (RuntimeException e) {
+                // Falha ao montar a requisição (ex.: sem chave API): devolve a vaga antes de propagar,
+                // senão cada falha assim tiraria de vez uma vaga do limite do modelo
+                releaseSlot(model, slot, System.nanoTime() - start, e);
+                return CompletableFuture.failedFuture(e);
+            }
+            current.set(call);
+            if (result.isDone()) {
+                call.cancel(true);
+            } else if (onSent != null) {
+                onSent.accept(attemptNo);
+            }
+            // Latência e sobrecarga observadas alimentam o ajuste do limite
+            call.whenComplete((value, error) -> releaseSlot(model, slot, System.nanoTime() - start, error));
+            return call;
+        }).whenComplete((value, error) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+
+            // FASE 1: Decide se a falha é temporária (429, 5xx, falha de conexão)
+            Throwable cause = unwrap(error);
+            if (attemptNo >= maxRetries || !isRetryable(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            // FASE 2: Espera respeitando Retry-After/RetryInfo ou backoff exponencial com jitter
+            long delay = backoffMillis(attemptNo, cause);
+            if (cause instanceof GeminiException && ((GeminiException) cause).isQuotaExceeded()) {
+                // Cota excedida: pausa todas as chamadas do mesmo modelo/chave, não só esta
+                limiter.penalize(model, apiKey, delay);
+            }
+            System.err.println("Gemini indisponível (" + cause.getMessage() + "), nova tentativa " + (attemptNo + 1) + "/" + maxRetries + " em " + delay + " ms...");
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor)
+                .execute(() -> runAttempt(attemptNo + 1, maxRetries, onSent, model, apiKey, tokens, attempt, result, current));
+        });
+    }
+
+    private static void releaseSlot(String model, ConcurrencyLimiter.Permit slot, long latencyNanos, Throwable error) {
+        if (error == null) {
+            slot.release(latencyNanos, false);
+            RequestHedger.getDefault().record(model, latencyNanos);
+            return;
+        }
+        Throwable cause = unwrap(error);
+        if (cause instanceof HttpTimeoutException
+                || (cause instanceof GeminiException && ((GeminiException) cause).isRetryable())) {
+            // 429, 5xx e timeouts indicam que o endpoint está saturado
+            slot.release(latencyNanos, true);
+        } else {
+            // Cancelamentos e erros de requisição (4xx) não dizem nada sobre a carga
+            slot.ignore();
+        }
+    }
+
+    private static boolean isRetryable(Throwable cause) {
+        if (cause instanceof GeminiException) {
+            return ((GeminiException) cause).isRetryable();
+        }
+        // Timeout da própria requisição não é repetido: o chamador já esperou o máximo combinado
+        return cause instanceof IOException && !(cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException));
+    }
+
+    private static long backoffMillis(int attemptNo, Throwable cause) {
+        // Pequeno jitter evita que chamadores pausados juntos voltem todos no mesmo instante
+        long jitter = ThreadLocalRandom.current().nextLong(250);
+        if (cause instanceof GeminiException && ((GeminiException) cause).getRetryAfter() != null) {
+            return ((GeminiException) cause).getRetryAfter().toMillis() + jitter;
+        }
+        // "Equal jitter": metade fixa do backoff exponencial, metade aleatória
+        long ceiling = Math.min(MAX_BACKOFF.toMillis(), BASE_BACKOFF.toMillis() << Math.min(attemptNo, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static Duration retryAfter(HttpResponse<?> response) {
+        // Retry-After pode vir em segundos ou como data HTTP
+        return response.headers().firstValue("Retry-After").map(value -> {
+            try {
+                return Duration.ofSeconds(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return Duration.between(ZonedDateTime.now(), at).isNegative() ? Duration.ZERO : Duration.between(ZonedDateTime.now(), at);
+                } catch (Exception ignored) {
+                    return null;
+                }
+            }
+        }).orElse(null);
+    }
+
+    private static long estimateTokens(String model, String payload) {
+        // Estimativa local (calibrada por modelo) apenas para o bucket de tokens por minuto
+        return Math.max(1, TokenEstimator.estimate(model, payload));
+    }
+
+    private static <T> CompletableFuture<T> cancelling(CompletableFuture<T> derived, CompletableFuture<?> exchange) {
+        // thenApply não propaga cancelamento: repassa manualmente para a troca HTTP
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+    private static class Timing {
+
+        // Mede TTFB (chegada dos cabeçalhos), duração total e bytes recebidos de uma troca HTTP
+        // O HttpClient do JDK não expõe o tempo de conexão/TLS separadamente
+        private final long start = System.nanoTime();
+
+        private volatile long ttfb;
+
+        private volatile boolean recorded;
+
+        // Bytes do corpo como chegaram da rede (antes da decodificação; o streaming não informa Content-Length)
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> handler) {
+            return info -> {
+                ttfb = System.nanoTime() - start;
+                HttpResponse.BodySubscriber<T> subscriber = handler.apply(info);
+                return new HttpResponse.BodySubscriber<T>() {
+                    @Override
+                    public CompletionStage<T> getBody() {
+                        return subscriber.getBody();
+                    }
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscriber.onSubscribe(subscription);
+                    }
+
+                    @Override
+                    public void onNext(List<ByteBuffer> buffers) {
+                        for (ByteBuffer buffer : buffers) {
+                            responseBytes.addAndGet(buffer.remaining());
+                        }
+                        subscriber.onNext(buffers);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        subscriber.onError(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        subscriber.onComplete();
+                    }
+                };
+            };
+        }
+
+        void record(String model, HttpRequest request, int status) {
+            recorded = true;
+            long requestBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+            GeminiMetrics.getDefault().recordExchange(model, status, ttfb, System.nanoTime() - start, requestBytes, responseBytes.get());
+        }
+
+        <T> CompletableFuture<T> onFailure(String model, CompletableFuture<T> call) {
+            // Falhas sem resposta HTTP (conexão, timeout, cancelamento) também são contabilizadas
+            call.whenComplete((value, error) -> {
+                if (error != null && !recorded) {
+                    GeminiMetrics.getDefault().recordFailure(model, unwrap(error));
+                }
+            });
+            return call;
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public static <T> CompletableFuture<T> withTimeoutAndCancellation(CompletableFuture<T> result, Duration timeout, AtomicReference<CompletableFuture<?>> inFlight) {
+        // Aplica o timeout da chamada completa (busca + geração), quando informado
+        if (timeout != null) {
+            result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        // Cancelamento ou timeout do resultado interrompe a etapa HTTP em andamento,
+        // já que thenApply/thenCompose não propagam cancelamento para a origem
+        result.whenComplete((value, error) -> {
+            CompletableFuture<?> pending = inFlight.get();
+            if (error != null && pending != null && !pending.isDone()) {
+                pending.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    public HttpRequest newRequest(String model, String method, String payload, Duration timeout) {
+        // Monta requisição POST autenticada para o método informado do modelo
+        return newApiRequest("models/" + model + ":" + method, "POST", payload, timeout);
+    }
+
+    private HttpRequest newApiRequest(String path, String httpMethod, String payload, Duration timeout) {
+        // A chave vai no cabeçalho x-goog-api-key para não aparecer em URLs e logs
+        String apiKey = apiKey();
+        if (apiKey == null) {
+            throw new IllegalStateException("Falha ao obter a chave API.");
+        }
+        return HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + path))
+                .timeout(timeout != null ? timeout : requestTimeout)
+                .header("Content-Type", "application/json")
+                .header("x-goog-api-key", apiKey)
+                .method(httpMethod, payload != null ? HttpRequest.BodyPublishers.ofString(payload) : HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private String apiKey() {
+        // Resolução sob lock: com várias threads virtuais em paralelo, só uma lê o arquivo
+        // ou pede a chave no stdin; as demais aguardam e reutilizam o resultado
+        String key = apiKey;
+        if (key == null) {
+            synchronized (this) {
+                key = apiKey;
+                if (key == null) {
+                    key = App.getApiKey();
+                    apiKey = key;
+                }
+            }
+        }
+        return key;
+    }
+
+    public void close() {
+        // Encerra o executor; conexões ociosas são liberadas pelo keep-alive
+        executor.shutdown();
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
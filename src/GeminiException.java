@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.time.Duration;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class GeminiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    private final String body;
+
+    private final Duration retryAfter;
+
+    public GeminiException(int statusCode, String body, Duration retryAfter) {
+        super("HTTP " + statusCode + ": " + errorMessage(body));
+        this.statusCode = statusCode;
+        this.body = body;
+        this.retryAfter = retryAfter != null ? retryAfter : retryDelayFromBody(body);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean isRetryable() {
+        // 429 = cota excedida; 5xx = indisponibilidade temporária do serviço
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    public boolean isQuotaExceeded() {
+        return statusCode == 429;
+    }
+
+    private static String errorMessage(String body) {
+        // Corpo de erro padrão da API: {"error": {"code": ..., "message": ..., "status": ...}}
+        try {
+            JSONObject error = new JSONObject(body).getJSONObject("error");
+            return error.optString("status", "") + " " + error.optString("message", "");
+        } catch (Exception e) {
+            return body == null ? "" : body.length() > 500 ? body.substring(0, 500) : body;
+        }
+    }
+
+    private static Duration retryDelayFromBody(String body) {
+        // Detalhes de cota: {"@type": "type.googleapis.com/google.rpc.RetryInfo", "retryDelay": "37s"}
+        try {
+            JSONArray details = new JSONObject(body).getJSONObject("error").optJSONArray("details");
+            if (details == null) {
+                return null;
+            }
+            for (int i = 0; i < details.length(); i++) {
+                String delay = details.getJSONObject(i).optString("retryDelay", null);
+                if (delay != null && delay.endsWith("s")) {
+                    return Duration.ofMillis((long) (Double.parseDouble(delay.substring(0, delay.length() - 1)) * 1000));
+                }
+            }
+        } catch (Exception e) {
+            // Corpo fora do formato esperado: sem indicação de espera
+        }
+        return null;
+    }
+}
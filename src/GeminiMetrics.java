@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class GeminiMetrics implements GeminiMetricsMXBean {
+
+    // Arquivo no formato texto do Prometheus gravado ao final da execução (vazio = não grava)
+    public static final String METRICS_FILE = System.getProperty("gemini.metrics.file", "");
+
+    // Porta do endpoint HTTP /metrics (0 = desativado)
+    public static final int METRICS_PORT = Integer.getInteger("gemini.metrics.port", 0);
+
+    public static final boolean PRINT_SUMMARY = Boolean.parseBoolean(System.getProperty("gemini.metrics.summary", "true"));
+
+    // Limites dos buckets dos histogramas de latência, em segundos
+    private static final double[] BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private static GeminiMetrics defaultMetrics;
+
+    private final String agent = agentName();
+
+    private final Map<String, ModelMetrics> models = new ConcurrentHashMap<>();
+
+    public static synchronized GeminiMetrics getDefault() {
+        // Na primeira utilização registra o MXBean, o endpoint opcional e o resumo de saída
+        if (defaultMetrics == null) {
+            defaultMetrics = new GeminiMetrics();
+            defaultMetrics.register();
+        }
+        return defaultMetrics;
+    }
+
+    public void recordQueue(String model, long nanos) {
+        // Tempo aguardando limitador de taxa e limite de concorrência
+        metricsFor(model).queue.observe(nanos);
+    }
+
+    public void recordExchange(String model, int status, long ttfbNanos, long totalNanos, long requestBytes, long responseBytes) {
+        // TTFB = até a chegada dos cabeçalhos da resposta; total = até o fim do corpo
+        ModelMetrics m = metricsFor(model);
+        m.requests.increment();
+        m.statuses.computeIfAbsent(String.valueOf(status), k -> new LongAdder()).increment();
+        m.ttfb.observe(ttfbNanos);
+        m.total.observe(totalNanos);
+        m.requestBytes.add(requestBytes);
+        m.responseBytes.add(responseBytes);
+    }
+
+    public void recordFailure(String model, Throwable error) {
+        // Falhas sem status HTTP (conexão, timeout, cancelamento)
+        ModelMetrics m = metricsFor(model);
+        m.requests.increment();
+        m.statuses.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    public void recordUsage(String model, JSONObject responseJson) {
+        // Contagem de tokens informada pela API em usageMetadata
+        JSONObject usage = responseJson == null ? null : responseJson.optJSONObject("usageMetadata");
+        if (usage == null) {
+            return;
+        }
+        ModelMetrics m = metricsFor(model);
+        m.promptTokens.add(usage.optLong("promptTokenCount", 0));
+        m.candidatesTokens.add(usage.optLong("candidatesTokenCount", 0));
+        m.totalTokens.add(usage.optLong("totalTokenCount", 0));
+    }
+
+    @Override
+    public long getRequests() {
+        return models.values().stream().mapToLong(m -> m.requests.sum()).sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return models.values().stream().mapToLong(ModelMetrics::errors).sum();
+    }
+
+    @Override
+    public long getPromptTokens() {
+        return models.values().stream().mapToLong(m -> m.promptTokens.sum()).sum();
+    }
+
+    @Override
+    public long getCandidatesTokens() {
+        return models.values().stream().mapToLong(m -> m.candidatesTokens.sum()).sum();
+    }
+
+    @Override
+    public long getTotalTokens() {
+        return models.values().stream().mapToLong(m -> m.totalTokens.sum()).sum();
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return models.values().stream().mapToLong(m -> m.requestBytes.sum()).sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return models.values().stream().mapToLong(m -> m.responseBytes.sum()).sum();
+    }
+
+    @Override
+    public String getPrometheusText() {
+        // Formato de exposição em texto do Prometheus (versão 0.0.4)
+        StringBuilder sb = new StringBuilder();
+        Map<String, ModelMetrics> sorted = new TreeMap<>(models);
+
+        sb.append("# HELP gemini_requests_total Requisições à API Gemini por status.\n");
+        sb.append("# TYPE gemini_requests_total counter\n");
+        sorted.forEach((model, m) -> new TreeMap<>(m.statuses).forEach((status, count) ->
+            sb.append("gemini_requests_total{").append(labels(model)).append(",status=\"").append(status).append("\"} ").append(count.sum()).append('\n')));
+
+        appendHistogram(sb, sorted, "gemini_queue_seconds", "Espera em limitadores antes do envio.", "queue");
+        appendHistogram(sb, sorted, "gemini_ttfb_seconds", "Tempo até os cabeçalhos da resposta.", "ttfb");
+        appendHistogram(sb, sorted, "gemini_request_seconds", "Duração total da troca HTTP.", "total");
+
+        appendCounter(sb, sorted, "gemini_request_bytes_total", "Bytes enviados no corpo das requisições.", m -> m.requestBytes.sum());
+        appendCounter(sb, sorted, "gemini_response_bytes_total", "Bytes recebidos no corpo das respostas.", m -> m.responseBytes.sum());
+        appendCounter(sb, sorted, "gemini_prompt_tokens_total", "Tokens de prompt (usageMetadata).", m -> m.promptTokens.sum());
+        appendCounter(sb, sorted, "gemini_candidates_tokens_total", "Tokens gerados (usageMetadata).", m -> m.candidatesTokens.sum());
+        appendCounter(sb, sorted, "gemini_tokens_total", "Total de tokens (usageMetadata).", m -> m.totalTokens.sum());
+
+        Map<String, int[]> concurrency = ConcurrencyLimiter.getDefault().snapshot();
+        String[][] gauges = {
+            {"gemini_concurrency_limit", "Limite adaptativo de requisições simultâneas."},
+            {"gemini_concurrency_in_flight", "Requisições em andamento."},
+            {"gemini_concurrency_queue_depth", "Requisições aguardando vaga."}
+        };
+        for (int i = 0; i < gauges.length; i++) {
+            int column = i;
+            sb.append("# HELP ").append(gauges[i][0]).append(' ').append(gauges[i][1]).append('\n');
+            sb.append("# TYPE ").append(gauges[i][0]).append(" gauge\n");
+            concurrency.forEach((model, values) ->
+                sb.append(gauges[column][0]).append('{').append(labels(model)).append("} ").append(values[column]).append('\n'));
+        }
+
+        ResponseCache cache = ResponseCache.current();
+        if (cache != null) {
+            sb.append("# TYPE gemini_cache_hits_total counter\n");
+            sb.append("gemini_cache_hits_total{agent=\"").append(agent).append("\"} ").append(cache.getHits()).append('\n');
+            sb.append("# TYPE gemini_cache_misses_total counter\n");
+            sb.append("gemini_cache_misses_total{agent=\"").append(agent).append("\"} ").append(cache.getMisses()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getSummary() {
+        // Resumo legível por modelo para o fim da execução do agente
+        StringBuilder sb = new StringBuilder("Resumo das chamadas Gemini (" + agent + "):\n");
+        new TreeMap<>(models).forEach((model, m) -> sb.append(String.format(
+            "  %s: %d requisições (%d erros) | total p50=%.2fs p95=%.2fs max=%.2fs | ttfb p50=%.2fs | fila p95=%.2fs | tokens prompt=%d gerados=%d total=%d | bytes enviados=%d recebidos=%d | status %s%n",
+            model, m.requests.sum(), m.errors(),
+            m.total.quantile(0.5), m.total.quantile(0.95), m.total.max(), m.ttfb.quantile(0.5), m.queue.quantile(0.95),
+            m.promptTokens.sum(), m.candidatesTokens.sum(), m.totalTokens.sum(),
+            m.requestBytes.sum(), m.responseBytes.sum(), new TreeMap<>(m.statuses))));
+        ResponseCache cache = ResponseCache.current();
+        if (cache != null) {
+            sb.append("  ").append(cache.stats()).append('\n');
+        }
+        sb.append("  ").append(App.singleFlightStats()).append('\n');
+        sb.append("  ").append(ConcurrencyLimiter.getDefault().stats()).append('\n');
+        sb.append("  ").append(RequestHedger.getDefault().stats()).append('\n');
+        if (TraceRecorder.ENABLED) {
+            sb.append("  ").append(TraceRecorder.getDefault().stats()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void writePrometheusFile(String file) throws IOException {
+        Files.writeString(Paths.get(file), getPrometheusText());
+    }
+
+    private void register() {
+        // FASE 1: Exposição via JMX (jconsole, VisualVM, agentes de coleta)
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("ai.agents:type=GeminiMetrics"));
+        } catch (Exception e) {
+            System.err.println("Falha ao registrar métricas JMX: " + e.getMessage());
+        }
+
+        // FASE 2: Endpoint HTTP opcional no formato do Prometheus
+        if (METRICS_PORT > 0) {
+            try {
+                HttpServer server = HttpServer.create(new InetSocketAddress(METRICS_PORT), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = getPrometheusText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Falha ao iniciar endpoint de métricas: " + e.getMessage());
+            }
+        }
+
+        // FASE 3: Resumo da execução do agente e arquivo .prom ao encerrar
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (models.isEmpty()) {
+                return;
+            }
+            if (PRINT_SUMMARY) {
+                System.out.print(getSummary());
+            }
+            if (!METRICS_FILE.isEmpty()) {
+                try {
+                    writePrometheusFile(METRICS_FILE);
+                } catch (IOException e) {
+                    System.err.println("Falha ao gravar métricas: " + e.getMessage());
+                }
+            }
+        }));
+    }
+
+    private ModelMetrics metricsFor(String model) {
+        return models.computeIfAbsent(model, k -> new ModelMetrics());
+    }
+
+    private String labels(String model) {
+        return "agent=\"" + agent + "\",model=\"" + model + "\"";
+    }
+
+    private void appendHistogram(StringBuilder sb, Map<String, ModelMetrics> sorted, String name, String help, String kind) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        sorted.forEach((model, m) -> {
+            Histogram h = kind.equals("queue") ? m.queue : kind.equals("ttfb") ? m.ttfb : m.total;
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += h.buckets[i].sum();
+                sb.append(name).append("_bucket{").append(labels(model)).append(",le=\"").append(BUCKETS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(name).append("_bucket{").append(labels(model)).append(",le=\"+Inf\"} ").append(h.count.sum()).append('\n');
+            sb.append(name).append("_sum{").append(labels(model)).append("} ").append(h.sumNanos.sum() / 1e9).append('\n');
+            sb.append(name).append("_count{").append(labels(model)).append("} ").append(h.count.sum()).append('\n');
+        });
+    }
+
+    private void appendCounter(StringBuilder sb, Map<String, ModelMetrics> sorted, String name, String help, java.util.function.ToLongFunction<ModelMetrics> value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sorted.forEach((model, m) -> sb.append(name).append('{').append(labels(model)).append("} ").append(value.applyAsLong(m)).append('\n'));
+    }
+
+    private static String agentName() {
+        // Classe principal da JVM identifica o agente em execução
+        String command = System.getProperty("sun.java.command", "");
+        String main = command.isEmpty() ? "desconhecido" : command.split(" ")[0];
+        return main.substring(main.lastIndexOf('.') + 1).replace("\"", "");
+    }
+
+    private static class ModelMetrics {
+        final LongAdder requests = new LongAdder();
+        final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        final Histogram queue = new Histogram();
+        final Histogram ttfb = new Histogram();
+        final Histogram total = new Histogram();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder candidatesTokens = new LongAdder();
+        final LongAdder totalTokens = new LongAdder();
+
+        long errors() {
+            long ok = 0;
+            for (Map.Entry<String, LongAdder> e : statuses.entrySet()) {
+                if (e.getKey().startsWith("2")) {
+                    ok += e.getValue().sum();
+                }
+            }
+            return requests.sum() - ok;
+        }
+    }
+
+    private static class Histogram {
+        final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        final LongAdder count = new LongAdder();
+        final LongAdder sumNanos = new LongAdder();
+        volatile long maxNanos;
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumNanos.add(nanos);
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        double max() {
+            return maxNanos / 1e9;
+        }
+
+        double quantile(double q) {
+            // Estimativa pelo limite superior do bucket que contém o quantil
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(q * total);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets[i].sum();
+                if (cumulative >= target) {
+                    return Math.min(BUCKETS[i], max());
+                }
+            }
+            return max();
+        }
+    }
+}
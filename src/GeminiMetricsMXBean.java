@@ -0,0 +1,20 @@
+public interface GeminiMetricsMXBean {
+
+    long getRequests();
+
+    long getErrors();
+
+    long getPromptTokens();
+
+    long getCandidatesTokens();
+
+    long getTotalTokens();
+
+    long getRequestBytes();
+
+    long getResponseBytes();
+
+    String getPrometheusText();
+
+    String getSummary();
+}
@@ -0,0 +1,113 @@
+import java.time.Duration;
+
+public class GeminiOptions {
+
+    private Duration timeout;
+
+    private boolean bypassCache;
+
+    private Duration cacheTtl;
+
+    private boolean hedge;
+
+    private long maxPromptTokens;
+
+    private TokenBudget.Overflow overflow = TokenBudget.Overflow.REFUSE;
+
+    private TokenBudget budget;
+
+    private ContextCache context;
+
+    private boolean concurrentSearch;
+
+    public GeminiOptions timeout(Duration timeout) {
+        // Tempo máximo da chamada completa (nulo = timeout padrão do GeminiClient)
+        this.timeout = timeout;
+        return this;
+    }
+
+    public GeminiOptions bypassCache(boolean bypassCache) {
+        // Ignora respostas em cache e força nova chamada (o resultado novo substitui o anterior)
+        this.bypassCache = bypassCache;
+        return this;
+    }
+
+    public GeminiOptions cacheTtl(Duration cacheTtl) {
+        // Validade da resposta no cache (nulo = padrão; chamadas com busca expiram mais cedo)
+        this.cacheTtl = cacheTtl;
+        return this;
+    }
+
+    public GeminiOptions hedge(boolean hedge) {
+        // Envia uma requisição duplicada se a resposta demorar mais que o percentil recente (a primeira vence)
+        this.hedge = hedge;
+        return this;
+    }
+
+    public GeminiOptions maxPromptTokens(long maxPromptTokens) {
+        // Limite de tokens do prompt desta chamada (0 = TokenBudget.MAX_PROMPT_TOKENS)
+        this.maxPromptTokens = maxPromptTokens;
+        return this;
+    }
+
+    public GeminiOptions overflow(TokenBudget.Overflow overflow) {
+        // O que fazer com prompts acima do limite: cortar, dividir em partes ou recusar (padrão)
+        this.overflow = overflow;
+        return this;
+    }
+
+    public GeminiOptions budget(TokenBudget budget) {
+        // Orçamento compartilhado pela execução do agente; esgotado, novas chamadas são recusadas
+        this.budget = budget;
+        return this;
+    }
+
+    public GeminiOptions context(ContextCache context) {
+        // Prefixo estável compartilhado pelas chamadas da execução (cachedContents no servidor, ou concatenado ao prompt)
+        this.context = context;
+        return this;
+    }
+
+    public GeminiOptions concurrentSearch(boolean concurrentSearch) {
+        // Chamadas com busca: gera a resposta em paralelo com a busca, sem o contexto dela no prompt,
+        // e anexa o resultado da busca ao final (uma ida e volta a menos; a resposta não usa a busca)
+        this.concurrentSearch = concurrentSearch;
+        return this;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public boolean isHedge() {
+        return hedge;
+    }
+
+    public long getMaxPromptTokens() {
+        return maxPromptTokens;
+    }
+
+    public TokenBudget.Overflow getOverflow() {
+        return overflow;
+    }
+
+    public TokenBudget getBudget() {
+        return budget;
+    }
+
+    public ContextCache getContext() {
+        return context;
+    }
+
+    public boolean isConcurrentSearch() {
+        return concurrentSearch;
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class GeminiStreamParser implements Flow.Subscriber<String> {
+
+    private static final int MAX_ERROR_CHARS = 8192;
+
+    private final Consumer<String> onText;
+
+    private final StringBuilder eventData = new StringBuilder();
+
+    private final StringBuilder errorBody = new StringBuilder();
+
+    private Flow.Subscription subscription;
+
+    private long chunks;
+
+    private long chars;
+
+    private volatile RuntimeException failure;
+
+    private volatile JSONObject lastChunk;
+
+    public GeminiStreamParser(Consumer<String> onText) {
+        // Callback que recebe cada trecho de texto assim que ele chega
+        this.onText = onText;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        // Solicita uma linha por vez: o servidor só avança quando o callback já consumiu a anterior
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(String line) {
+        try {
+            chars += line.length() + 1;
+
+            // Após uma falha o restante do corpo é apenas drenado
+            if (failure != null) {
+                return;
+            }
+
+            // FASE 1: Interpretação do protocolo server-sent events (SSE)
+            // Cada evento é formado por linhas "data:" e termina com uma linha em branco
+            if (line.isEmpty()) {
+                dispatchEvent();
+            } else if (line.startsWith("data:")) {
+                if (eventData.length() > 0) {
+                    eventData.append('\n');
+                }
+                eventData.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            } else if (!line.startsWith(":") && !line.startsWith("event:") && !line.startsWith("id:") && !line.startsWith("retry:")) {
+                // Linhas fora do protocolo indicam corpo de erro em JSON (guardado de forma limitada)
+                if (errorBody.length() < MAX_ERROR_CHARS) {
+                    errorBody.append(line).append('\n');
+                }
+            }
+        } catch (RuntimeException e) {
+            // Evento malformado ou falha no callback: guarda a primeira causa para o futuro da requisição
+            failure = e;
+        } finally {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // Falhas de transporte são reportadas pelo futuro da requisição
+    }
+
+    @Override
+    public void onComplete() {
+        // Entrega um último evento que não tenha sido terminado por linha em branco
+        try {
+            if (failure == null) {
+                dispatchEvent();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getChars() {
+        // Tamanho aproximado do corpo recebido (o streaming não informa Content-Length)
+        return chars;
+    }
+
+    public JSONObject getLastChunk() {
+        // O último evento traz usageMetadata com a contagem final de tokens
+        return lastChunk;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public String getErrorBody() {
+        return errorBody.toString();
+    }
+
+    private void dispatchEvent() {
+        if (eventData.length() == 0) {
+            return;
+        }
+
+        // FASE 2: Extração dos trechos de texto do evento
+        // Caminho: candidates -> [0] -> content -> parts -> [*] -> text
+        JSONObject chunk = new JSONObject(eventData.toString());
+        eventData.setLength(0);
+        chunks++;
+        lastChunk = chunk;
+
+        JSONArray candidates = chunk.optJSONArray("candidates");
+        if (candidates == null || candidates.isEmpty()) {
+            return;
+        }
+        JSONObject content = candidates.getJSONObject(0).optJSONObject("content");
+        if (content == null) {
+            return;
+        }
+        JSONArray parts = content.optJSONArray("parts");
+        if (parts == null) {
+            return;
+        }
+        for (int i = 0; i < parts.length(); i++) {
+            String text = parts.getJSONObject(i).optString("text", null);
+            if (text != null && !text.isEmpty()) {
+                onText.accept(text);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+public class MapReduce {
+
+    // Modo map-reduce dos agentes revisores, opcional: muda o relatório (arquivos analisados sem a estrutura de
+    // pastas; no Content/Grammar, só a concatenação das tabelas). false = modo anterior, com a estrutura no prompt
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("agent.mapreduce", "false"));
+
+    // Quantos resumos são combinados por chamada em cada nível da redução
+    public static final int FAN_IN = Math.max(2, Integer.getInteger("agent.fanIn", 8));
+
+    // Limite da estrutura de pastas incluída no prompt final
+    public static final int MAX_STRUCTURE_CHARS = Integer.getInteger("agent.structure.maxChars", 20000);
+
+    public static List<String> reduce(List<String> summaries, int fanIn, int parallelism, Function<List<String>, String> combine) throws InterruptedException, ExecutionException {
+        // Redução em árvore: cada nível agrupa até fanIn resumos e os combina em um só,
+        // até restarem no máximo fanIn resumos para o prompt final.
+        // Cada prompt recebe no máximo fanIn resumos, independente da quantidade de arquivos.
+        List<String> level = summaries;
+        int depth = 0;
+        while (level.size() > fanIn) {
+            List<List<String>> groups = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += fanIn) {
+                groups.add(level.subList(i, Math.min(i + fanIn, level.size())));
+            }
+            System.out.println("Consolidando " + level.size() + " resumos em " + groups.size() + " (nível " + (++depth) + ")...");
+
+            // Grupos do mesmo nível são independentes e combinados em paralelo, mantendo a ordem
+            level = FanOut.map(groups, parallelism, group -> {
+                String combined = combine.apply(group);
+                // Falha na combinação: preserva os resumos originais em vez de perdê-los
+                return combined != null ? combined : String.join("\n\n", group);
+            });
+        }
+        return level;
+    }
+
+    public static String truncate(String text, int maxChars) {
+        // Estruturas muito grandes são cortadas em fronteira de linha, informando o que foi omitido
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf('\n', maxChars);
+        cut = cut > 0 ? cut : maxChars;
+        long omitted = text.substring(cut + 1).lines().count();
+        return text.substring(0, cut) + "\n... (" + omitted + " linhas omitidas)\n";
+    }
+}
@@ -0,0 +1,438 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class ProjectScanner {
+
+    // Arquivos maiores que o limite aparecem na estrutura, mas não são analisados
+    public static final long MAX_FILE_BYTES = Long.getLong("agent.scan.maxBytes", 1024 * 1024);
+
+    // A partir deste tamanho o conteúdo é lido por mapeamento em memória (FileChannel.map)
+    public static final long MMAP_BYTES = Long.getLong("agent.scan.mmapBytes", 256 * 1024);
+
+    // Globs extras separados por vírgula; sem "/" valem para o nome em qualquer nível, com "/" para o caminho relativo
+    public static final String EXCLUDE = System.getProperty("agent.scan.exclude", "");
+
+    public static final String INCLUDE = System.getProperty("agent.scan.include", "");
+
+    // Varre os itens da raiz em paralelo (threads virtuais), preservando a ordem na saída
+    public static final boolean PARALLEL = Boolean.parseBoolean(System.getProperty("agent.scan.parallel", "true"));
+
+    public static final Set<String> SKIPPED_DIRS = Set.of(System.getProperty("agent.scan.skipDirs", ".git,bin,dist").split(","));
+
+    // Quantidade de bytes inspecionada para detectar arquivos binários
+    private static final int SNIFF_BYTES = 8192;
+
+    private final Path root;
+
+    private final boolean subfolders;
+
+    private final List<Rule> excludes;
+
+    private final List<Rule> includes;
+
+    private final StringBuilder structure = new StringBuilder();
+
+    // Arquivos entregues para análise, sempre na ordem de entrega
+    private final List<Path> files = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger ignored = new AtomicInteger();
+
+    private final AtomicInteger binaries = new AtomicInteger();
+
+    private final AtomicInteger oversized = new AtomicInteger();
+
+    public ProjectScanner(Path root, boolean subfolders) {
+        this.root = root.toAbsolutePath().normalize();
+        this.subfolders = subfolders;
+        this.excludes = parseGlobs(EXCLUDE);
+        this.includes = parseGlobs(INCLUDE);
+    }
+
+    public List<Path> scanAll() {
+        // Varredura completa antes da análise (modos que precisam da estrutura em cada prompt)
+        scan(file -> { });
+        return getFiles();
+    }
+
+    public void scan(Consumer<Path> onFile) {
+        // Cada arquivo de texto é entregue ao consumidor assim que encontrado,
+        // permitindo que a análise comece enquanto a varredura continua
+        Consumer<Path> emit = file -> {
+            files.add(file);
+            onFile.accept(file);
+        };
+        try {
+            if (PARALLEL && subfolders) {
+                scanParallel(emit);
+            } else {
+                Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), subfolders ? Integer.MAX_VALUE : 1,
+                    new Walker(structure, emit, new ArrayDeque<>()));
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao varrer " + root + ": " + e.getMessage());
+        }
+    }
+
+    public String getStructure() {
+        return structure.toString();
+    }
+
+    public List<Path> getFiles() {
+        synchronized (files) {
+            return new ArrayList<>(files);
+        }
+    }
+
+    public String summary() {
+        return String.format("%d arquivos para análise, %d binários, %d acima de %d bytes, %d ignorados (.gitignore/globs)",
+            files.size(), binaries.get(), oversized.get(), MAX_FILE_BYTES, ignored.get());
+    }
+
+    public static String read(Path file) throws IOException {
+        // Arquivos grandes são decodificados direto do mapeamento, sem copiar para um byte[] intermediário;
+        // conteúdo que não é UTF-8 válido lança exceção, como Files.readString
+        long size = Files.size(file);
+        if (size < MMAP_BYTES) {
+            return Files.readString(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return StandardCharsets.UTF_8.newDecoder().decode(buffer).toString();
+        }
+    }
+
+    private void scanParallel(Consumer<Path> onFile) throws Exception {
+        // FASE 1: Raiz processada aqui; cada item dela vira uma varredura independente
+        structure.append("[DIR] ").append(root.getFileName()).append('\n');
+        Deque<List<Rule>> rootRules = new ArrayDeque<>();
+        rootRules.push(loadGitignore(root));
+
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            stream.forEach(entries::add);
+        }
+
+        // FASE 2: Entrega na ordem da listagem da raiz. O primeiro segmento ainda em varredura entrega cada
+        // arquivo assim que o visita; os seguintes guardam os seus até os anteriores terminarem
+        Segment[] segments = new Segment[entries.size()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        Delivery delivery = new Delivery(segments, onFile);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> walks = new ArrayList<>();
+            for (int i = 0; i < segments.length; i++) {
+                int index = i;
+                walks.add(executor.submit(() -> {
+                    try {
+                        Files.walkFileTree(entries.get(index), new Walker(segments[index].structure, file -> delivery.found(index, file), new ArrayDeque<>(rootRules)));
+                    } finally {
+                        delivery.done(index);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> walk : walks) {
+                walk.get();
+            }
+        }
+
+        // FASE 3: Estrutura montada na mesma ordem
+        for (Segment segment : segments) {
+            structure.append(segment.structure);
+        }
+    }
+
+    private boolean isBinary(Path file) throws IOException {
+        // Mesma heurística do git: um byte nulo nos primeiros KB indica conteúdo binário
+        byte[] head = new byte[SNIFF_BYTES];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(head, 0, SNIFF_BYTES);
+        }
+        for (int i = 0; i < read; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int depth(Path path) {
+        return path.equals(root) ? 0 : root.relativize(path).getNameCount();
+    }
+
+    private static List<Rule> loadGitignore(Path dir) {
+        // Regras do .gitignore do diretório (vazia se não houver)
+        Path gitignore = dir.resolve(".gitignore");
+        List<Rule> rules = new ArrayList<>();
+        if (!Files.isRegularFile(gitignore)) {
+            return rules;
+        }
+        try {
+            for (String line : Files.readAllLines(gitignore)) {
+                Rule rule = Rule.parse(dir, line);
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao ler " + gitignore + ": " + e.getMessage());
+        }
+        return rules;
+    }
+
+    private List<Rule> parseGlobs(String globs) {
+        List<Rule> rules = new ArrayList<>();
+        for (String glob : globs.split(",")) {
+            Rule rule = Rule.parse(root, glob);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    private static boolean matchesAny(List<Rule> rules, Path path, boolean directory) {
+        for (Rule rule : rules) {
+            if (rule.matches(path, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIgnored(Deque<List<Rule>> stack, Path path, boolean directory) {
+        // Semântica do .gitignore: do diretório mais externo ao mais interno, a última regra que casar vence
+        boolean ignored = false;
+        for (Iterator<List<Rule>> it = stack.descendingIterator(); it.hasNext(); ) {
+            for (Rule rule : it.next()) {
+                if (rule.matches(path, directory)) {
+                    ignored = !rule.negate;
+                }
+            }
+        }
+        return ignored;
+    }
+
+    private class Walker extends SimpleFileVisitor<Path> {
+
+        private final StringBuilder out;
+
+        private final Consumer<Path> sink;
+
+        // Regras de .gitignore ativas, uma lista por diretório aberto
+        private final Deque<List<Rule>> rules;
+
+        Walker(StringBuilder out, Consumer<Path> sink, Deque<List<Rule>> rules) {
+            this.out = out;
+            this.sink = sink;
+            this.rules = rules;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root) && (SKIPPED_DIRS.contains(dir.getFileName().toString())
+                    || isIgnored(rules, dir, true) || matchesAny(excludes, dir, true))) {
+                ignored.incrementAndGet();
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            out.append("  ".repeat(depth(dir))).append("[DIR] ").append(dir.getFileName()).append('\n');
+            rules.push(loadGitignore(dir));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            rules.pop();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            // Subpastas além da profundidade máxima chegam aqui como diretórios: só entram na estrutura
+            if (attrs.isDirectory()) {
+                if (!SKIPPED_DIRS.contains(file.getFileName().toString()) && !isIgnored(rules, file, true)) {
+                    out.append("  ".repeat(depth(file))).append("[DIR] ").append(file.getFileName()).append('\n');
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            if (isIgnored(rules, file, false) || matchesAny(excludes, file, false)
+                    || (!includes.isEmpty() && !matchesAny(includes, file, false))) {
+                ignored.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+            out.append("  ".repeat(depth(file))).append(file).append('\n');
+
+            // Limite de tamanho e detecção de binários antes de qualquer leitura completa
+            try {
+                if (attrs.size() > MAX_FILE_BYTES) {
+                    oversized.incrementAndGet();
+                } else if (isBinary(file)) {
+                    binaries.incrementAndGet();
+                } else {
+                    sink.accept(file);
+                }
+            } catch (IOException e) {
+                // Arquivo ilegível: fica só na estrutura, sem interromper a varredura
+                ignored.incrementAndGet();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            ignored.incrementAndGet();
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    private static class Segment {
+
+        private final StringBuilder structure = new StringBuilder();
+
+        // Arquivos encontrados enquanto um segmento anterior ainda está em varredura
+        private final List<Path> pending = new ArrayList<>();
+
+        private boolean done;
+    }
+
+    private static class Delivery {
+
+        private final Segment[] segments;
+
+        private final Consumer<Path> onFile;
+
+        // Primeiro segmento ainda não concluído: só ele entrega direto
+        private int head;
+
+        Delivery(Segment[] segments, Consumer<Path> onFile) {
+            this.segments = segments;
+            this.onFile = onFile;
+        }
+
+        synchronized void found(int index, Path file) {
+            if (index == head) {
+                onFile.accept(file);
+            } else {
+                segments[index].pending.add(file);
+            }
+        }
+
+        synchronized void done(int index) {
+            // Avança sobre os segmentos concluídos, esvaziando o que cada um guardou; o novo primeiro
+            // segmento entrega o que já encontrou e, daqui em diante, cada arquivo assim que o visita
+            segments[index].done = true;
+            while (head < segments.length) {
+                Segment segment = segments[head];
+                segment.pending.forEach(onFile);
+                segment.pending.clear();
+                if (!segment.done) {
+                    return;
+                }
+                head++;
+            }
+        }
+    }
+
+    private static class Rule {
+
+        private final Path base;
+
+        private final PathMatcher matcher;
+
+        private final boolean negate;
+
+        private final boolean directoryOnly;
+
+        // Padrões sem "/" valem para o nome do arquivo em qualquer nível
+        private final boolean nameOnly;
+
+        // Para "**/a/b": o mesmo padrão sem o prefixo, que também vale na própria base ("a/b")
+        private final PathMatcher baseMatcher;
+
+        private Rule(Path base, PathMatcher matcher, boolean negate, boolean directoryOnly, boolean nameOnly, PathMatcher baseMatcher) {
+            this.base = base;
+            this.matcher = matcher;
+            this.negate = negate;
+            this.directoryOnly = directoryOnly;
+            this.nameOnly = nameOnly;
+            this.baseMatcher = baseMatcher;
+        }
+
+        static Rule parse(Path base, String line) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return null;
+            }
+            boolean negate = pattern.startsWith("!");
+            if (negate) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            // No .gitignore, "**/" no início casa com zero ou mais pastas; no glob do Java, "**/foo" exige ao menos
+            // uma pasta antes de "foo", então "foo" na própria base também é testado sem o prefixo
+            String withinBase = null;
+            while (pattern.startsWith("**/")) {
+                pattern = pattern.substring(3);
+                withinBase = pattern;
+            }
+            boolean nameOnly = !pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return null;
+            }
+            if (withinBase != null && !nameOnly) {
+                // "**/a/b": "a/b" em qualquer nível, inclusive na base
+                return new Rule(base, FileSystems.getDefault().getPathMatcher("glob:**/" + pattern), negate, directoryOnly, false,
+                    FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+            return new Rule(base, FileSystems.getDefault().getPathMatcher("glob:" + pattern), negate, directoryOnly, nameOnly, null);
+        }
+
+        boolean matches(Path path, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            if (nameOnly) {
+                return matcher.matches(path.getFileName());
+            }
+            if (!path.startsWith(base)) {
+                return false;
+            }
+            Path relative = base.relativize(path);
+            return matcher.matches(relative) || (baseMatcher != null && baseMatcher.matches(relative));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiter {
+
+    public static final int DEFAULT_RPM = Integer.getInteger("gemini.rateLimit.rpm", 1000);
+
+    public static final long DEFAULT_TPM = Long.getLong("gemini.rateLimit.tpm", 4_000_000L);
+
+    private static RateLimiter defaultLimiter;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "gemini-rate-limiter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static synchronized RateLimiter getDefault() {
+        if (defaultLimiter == null) {
+            defaultLimiter = new RateLimiter();
+        }
+        return defaultLimiter;
+    }
+
+    public CompletableFuture<Void> acquire(String model, String apiKey, long tokens) {
+        // Enfileira o chamador até haver requisições e tokens disponíveis no minuto corrente
+        // O futuro completa quando a chamada pode seguir; nenhuma chamada é recusada
+        return limitFor(model, apiKey).acquire(tokens);
+    }
+
+    public void penalize(String model, String apiKey, long pauseMillis) {
+        // Após um 429, suspende novas liberações para o modelo/chave pelo tempo indicado pela API
+        limitFor(model, apiKey).pause(pauseMillis);
+    }
+
+    public int getQueued(String model, String apiKey) {
+        return limitFor(model, apiKey).queued();
+    }
+
+    private Limit limitFor(String model, String apiKey) {
+        // Buckets independentes por modelo e por chave API (identificada apenas pelo hash)
+        String id = model + "|" + ResponseCache.sha256(apiKey == null ? "" : apiKey).substring(0, 12);
+        return limits.computeIfAbsent(id, k -> new Limit(
+            Integer.getInteger("gemini.rateLimit.rpm." + model, DEFAULT_RPM),
+            Long.getLong("gemini.rateLimit.tpm." + model, DEFAULT_TPM)
+        ));
+    }
+
+    private class Limit {
+
+        private final double requestCapacity;
+
+        private final double tokenCapacity;
+
+        private double requests;
+
+        private double tokens;
+
+        private long refilledAt = System.nanoTime();
+
+        // Instante do nanoTime até o qual as liberações ficam suspensas; a origem do nanoTime é arbitrária
+        // (pode ser negativa), então começa em "agora" e é sempre comparado por diferença
+        private long pausedUntil = System.nanoTime();
+
+        private boolean drainScheduled;
+
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+
+        Limit(int rpm, long tpm) {
+            this.requestCapacity = rpm;
+            this.tokenCapacity = tpm;
+            this.requests = rpm;
+            this.tokens = tpm;
+        }
+
+        synchronized CompletableFuture<Void> acquire(long cost) {
+            // Requisições maiores que a cota inteira consomem o bucket cheio em vez de esperar para sempre
+            double tokenCost = Math.min(cost, tokenCapacity);
+            refill();
+            if (queue.isEmpty() && canProceed(tokenCost)) {
+                consume(tokenCost);
+                return CompletableFuture.completedFuture(null);
+            }
+            Waiter waiter = new Waiter(tokenCost);
+            queue.add(waiter);
+            scheduleDrain();
+            return waiter.future;
+        }
+
+        synchronized void pause(long millis) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+        }
+
+        synchronized int queued() {
+            return queue.size();
+        }
+
+        private void drain() {
+            ArrayDeque<Waiter> released = new ArrayDeque<>();
+            synchronized (this) {
+                drainScheduled = false;
+                refill();
+
+                // Libera em ordem de chegada enquanto houver capacidade (FIFO, sem furar a fila)
+                while (!queue.isEmpty()) {
+                    Waiter head = queue.peek();
+                    if (head.future.isDone()) {
+                        queue.poll();
+                        continue;
+                    }
+                    if (!canProceed(head.tokens)) {
+                        break;
+                    }
+                    consume(head.tokens);
+                    released.add(queue.poll());
+                }
+                if (!queue.isEmpty()) {
+                    scheduleDrain();
+                }
+            }
+
+            // Completa fora do lock para que as continuações não segurem o limitador
+            for (Waiter waiter : released) {
+                waiter.future.complete(null);
+            }
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            scheduler.schedule(this::drain, waitNanos(queue.peek().tokens), TimeUnit.NANOSECONDS);
+        }
+
+        private long waitNanos(double tokenCost) {
+            // Tempo até o bucket acumular o que falta (taxa = capacidade por minuto)
+            long now = System.nanoTime();
+            long pause = Math.max(0, pausedUntil - now);
+            double perNanoRequests = requestCapacity / 60e9;
+            double perNanoTokens = tokenCapacity / 60e9;
+            long forRequests = requests >= 1 ? 0 : (long) ((1 - requests) / perNanoRequests);
+            long forTokens = tokens >= tokenCost ? 0 : (long) ((tokenCost - tokens) / perNanoTokens);
+            return Math.max(pause, Math.max(Math.max(forRequests, forTokens), TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+
+        private boolean canProceed(double tokenCost) {
+            return System.nanoTime() - pausedUntil >= 0 && requests >= 1 && tokens >= tokenCost;
+        }
+
+        private void consume(double tokenCost) {
+            requests -= 1;
+            tokens -= tokenCost;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double elapsedMinutes = (now - refilledAt) / 60e9;
+            refilledAt = now;
+            requests = Math.min(requestCapacity, requests + elapsedMinutes * requestCapacity);
+            tokens = Math.min(tokenCapacity, tokens + elapsedMinutes * tokenCapacity);
+        }
+    }
+
+    private static class Waiter {
+        final double tokens;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(double tokens) {
+            this.tokens = tokens;
+        }
+    }
+}
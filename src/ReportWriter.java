@@ -0,0 +1,140 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReportWriter implements Closeable {
+
+    // Intervalo máximo entre a chegada de uma seção e sua gravação no arquivo (progresso visível ao vivo)
+    public static final long FLUSH_MILLIS = Long.getLong("agent.report.flushMillis", 1000);
+
+    private final Path file;
+
+    private final BufferedWriter writer;
+
+    // Próximo número de sequência a reservar e próximo a gravar
+    private final AtomicLong reserved = new AtomicLong();
+
+    private long nextToWrite;
+
+    // Buffer de reordenação: seções concluídas fora de ordem aguardam as anteriores
+    private final Map<Long, String> pending = new TreeMap<>();
+
+    private int maxPending;
+
+    private long sections;
+
+    private boolean dirty;
+
+    private boolean closed;
+
+    private final Thread flusher;
+
+    private ReportWriter(Path file, BufferedWriter writer) {
+        this.file = file;
+        this.writer = writer;
+        this.flusher = Thread.ofVirtual().name("report-flush").start(this::flushLoop);
+    }
+
+    public static ReportWriter open(Path file, String header) throws IOException {
+        // Recria o arquivo e grava o cabeçalho de imediato; as seções são acrescentadas à medida que chegam
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.flush();
+        return new ReportWriter(file, writer);
+    }
+
+    public long next() {
+        // Reserva a posição da próxima seção na ordem de submissão (ex.: ordem da varredura)
+        return reserved.getAndIncrement();
+    }
+
+    public void append(String section) {
+        // Seção já na ordem final (modo sequencial)
+        write(next(), section);
+    }
+
+    public synchronized void write(long sequence, String section) {
+        // Seção da posição reservada; null marca posição sem conteúdo (arquivo descartado, pesquisa com falha)
+        if (closed) {
+            return;
+        }
+        pending.put(sequence, section != null ? section : "");
+
+        // Grava todas as seções contíguas a partir da próxima esperada; as demais ficam no buffer
+        try {
+            String text;
+            while ((text = pending.remove(nextToWrite)) != null) {
+                if (!text.isEmpty()) {
+                    writer.write(text);
+                    sections++;
+                    dirty = true;
+                }
+                nextToWrite++;
+            }
+            maxPending = Math.max(maxPending, pending.size());
+        } catch (IOException e) {
+            System.err.println("Falha ao gravar relatório parcial em " + file + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized String stats() {
+        return String.format("%d seções gravadas em %s, até %d aguardando na fila de reordenação", sections, file, maxPending);
+    }
+
+    public void replaceWith(String content) throws IOException {
+        // Relatório final substitui o parcial de forma atômica: interrompido, o parcial permanece
+        close();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, content);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!pending.isEmpty()) {
+                // Posições reservadas e nunca concluídas: grava o que chegou, na ordem
+                System.err.println("Relatório com " + pending.size() + " seções fora de sequência gravadas ao final.");
+                for (String text : pending.values()) {
+                    writer.write(text);
+                }
+                pending.clear();
+            }
+            writer.close();
+        }
+        flusher.interrupt();
+    }
+
+    private void flushLoop() {
+        // Descarrega o buffer periodicamente, e não a cada seção, para limitar as chamadas de sistema
+        try {
+            while (true) {
+                Thread.sleep(FLUSH_MILLIS);
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    if (dirty) {
+                        writer.flush();
+                        dirty = false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Falha ao descarregar relatório parcial em " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+public class RequestHedger {
+
+    // Percentil da latência recente a partir do qual uma requisição duplicada é enviada
+    public static final double PERCENTILE = Double.parseDouble(System.getProperty("gemini.hedge.percentile", "0.95"));
+
+    // Fração máxima do tráfego com hedge que pode virar requisição duplicada
+    public static final double BUDGET = Double.parseDouble(System.getProperty("gemini.hedge.budget", "0.1"));
+
+    // Amostras mínimas antes de confiar no percentil
+    public static final int MIN_SAMPLES = Integer.getInteger("gemini.hedge.minSamples", 20);
+
+    private static final int WINDOW = 256;
+
+    private static RequestHedger defaultHedger;
+
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public static synchronized RequestHedger getDefault() {
+        if (defaultHedger == null) {
+            defaultHedger = new RequestHedger();
+        }
+        return defaultHedger;
+    }
+
+    public void record(String model, long latencyNanos) {
+        // Alimenta a janela de latências recentes do modelo (apenas respostas bem-sucedidas)
+        windows.computeIfAbsent(model, k -> new LatencyWindow()).add(latencyNanos);
+    }
+
+    public long percentileNanos(String model, double percentile) {
+        LatencyWindow window = windows.get(model);
+        return window == null ? -1 : window.percentile(percentile);
+    }
+
+    public interface Attempt<T> {
+
+        // duplicate: a duplicata não repete tentativas; onSent: chamado com o número da tentativa
+        // quando ela sai para a rede, depois da espera nos limitadores
+        CompletableFuture<T> start(boolean duplicate, IntConsumer onSent);
+    }
+
+    public <T> CompletableFuture<T> hedge(String model, Attempt<T> call) {
+        requests.incrementAndGet();
+        long delayNanos = percentileNanos(model, PERCENTILE);
+        if (delayNanos < 0) {
+            // Sem histórico suficiente não há como saber o que é uma resposta lenta
+            return call.start(false, attemptNo -> { });
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean retrying = new AtomicBoolean();
+        CompletableFuture<?>[] secondary = new CompletableFuture<?>[1];
+
+        // FASE 1: Requisição principal; o prazo conta a partir do envio, não da entrada na fila dos limitadores,
+        // já que a janela de latências mede só o tempo de rede
+        CompletableFuture<T> primary = call.start(false, attemptNo -> {
+            if (attemptNo > 0) {
+                // Principal em nova tentativa (429, 5xx): uma duplicata furaria o backoff
+                retrying.set(true);
+                return;
+            }
+
+            // FASE 2: Se a principal não respondeu até o percentil configurado, envia uma duplicata
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                if (result.isDone() || retrying.get() || !withinBudget()) {
+                    return;
+                }
+                hedges.incrementAndGet();
+                pending.incrementAndGet();
+                CompletableFuture<T> duplicate = call.start(true, duplicateNo -> { });
+                synchronized (secondary) {
+                    secondary[0] = duplicate;
+                }
+                settle(duplicate, result, pending, true);
+                if (result.isDone()) {
+                    duplicate.cancel(true);
+                }
+            });
+        });
+        settle(primary, result, pending, false);
+
+        // FASE 3: A primeira resposta vence e a perdedora é cancelada
+        result.whenComplete((value, error) -> {
+            primary.cancel(true);
+            synchronized (secondary) {
+                if (secondary[0] != null) {
+                    secondary[0].cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    public String stats() {
+        return String.format("hedging: %d requisições elegíveis, %d duplicatas enviadas, %d vencidas pela duplicata",
+            requests.get(), hedges.get(), hedgeWins.get());
+    }
+
+    private <T> void settle(CompletableFuture<T> attempt, CompletableFuture<T> result, AtomicInteger pending, boolean isHedge) {
+        attempt.whenComplete((value, error) -> {
+            if (error == null) {
+                if (result.complete(value) && isHedge) {
+                    hedgeWins.incrementAndGet();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // Falha só é propagada quando nenhuma tentativa pode mais responder
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private boolean withinBudget() {
+        // Duplicatas nunca passam da fração configurada do tráfego elegível
+        return hedges.get() + 1 <= BUDGET * requests.get();
+    }
+
+    private static class LatencyWindow {
+
+        private final long[] samples = new long[WINDOW];
+
+        private int count;
+
+        private int next;
+
+        synchronized void add(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+}
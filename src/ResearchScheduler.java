@@ -0,0 +1,268 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class ResearchScheduler {
+
+    // Níveis da árvore de pesquisa (1 = só os prompts do plano, sem desdobramentos)
+    public static final int DEPTH = Math.max(1, Integer.getInteger("agent.research.depth", 2));
+
+    // Prompts do plano e subconsultas geradas por pesquisa concluída
+    public static final int BREADTH = Math.max(1, Integer.getInteger("agent.research.breadth", 2));
+
+    // Limite global de chamadas à API da árvore inteira: só pesquisas e desdobramentos. O plano, as sínteses
+    // parciais e a consolidação final ficam fora (no máximo 2 + número de ramos chamadas a mais)
+    public static final int MAX_CALLS = Integer.getInteger("agent.research.maxCalls", 30);
+
+    // Tempo máximo da árvore; ao expirar, a síntese segue com as pesquisas concluídas
+    public static final Duration MAX_TIME = Duration.ofSeconds(Long.getLong("agent.research.maxSeconds", 600));
+
+    public static class Node {
+
+        private final String id;
+
+        private final int level;
+
+        private final String query;
+
+        private final long sequence;
+
+        private final List<Node> children = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile String result;
+
+        // Ramo (prompt do plano) a que o nó pertence; no nó raiz, conta o trabalho pendente da subárvore
+        private Node branch;
+
+        private final AtomicInteger open = new AtomicInteger();
+
+        Node(String id, int level, String query, long sequence) {
+            this.id = id;
+            this.level = level;
+            this.query = query;
+            this.sequence = sequence;
+        }
+
+        public String getId() {
+            // Posição na árvore: "2" (segundo prompt do plano), "2.1" (primeira subconsulta dele)...
+            return id;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public long getSequence() {
+            // Ordem de criação do nó, usada para gravar o relatório parcial em ordem estável
+            return sequence;
+        }
+
+        public String getResult() {
+            // Resposta da pesquisa, ou null se falhou ou foi interrompida pelo orçamento
+            return result;
+        }
+
+        public List<Node> getChildren() {
+            synchronized (children) {
+                return new ArrayList<>(children);
+            }
+        }
+    }
+
+    private final Function<String, CompletableFuture<String>> search;
+
+    private final BiFunction<Node, Integer, CompletableFuture<List<String>>> expand;
+
+    private final Consumer<Node> onSettled;
+
+    private Consumer<Node> onBranchSettled;
+
+    private final int depth;
+
+    private final int breadth;
+
+    private final int maxCalls;
+
+    private final TokenBudget budget;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicInteger pruned = new AtomicInteger();
+
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final CompletableFuture<Void> settled = new CompletableFuture<>();
+
+    private volatile boolean stopped;
+
+    public ResearchScheduler(Function<String, CompletableFuture<String>> search, BiFunction<Node, Integer, CompletableFuture<List<String>>> expand,
+            Consumer<Node> onSettled, int depth, int breadth, int maxCalls, TokenBudget budget) {
+        // search: pesquisa de uma consulta; expand: até N subconsultas a partir de um nó concluído;
+        // onSettled: chamado uma vez por nó criado, concluído ou não
+        this.search = search;
+        this.expand = expand;
+        this.onSettled = onSettled;
+        this.depth = depth;
+        this.breadth = breadth;
+        this.maxCalls = maxCalls;
+        this.budget = budget;
+    }
+
+    public ResearchScheduler onBranchSettled(Consumer<Node> onBranchSettled) {
+        // Chamado uma vez por prompt do plano quando a subárvore inteira dele termina (ex.: síntese parcial antecipada)
+        this.onBranchSettled = onBranchSettled;
+        return this;
+    }
+
+    public List<Node> run(List<String> queries, Duration maxTime) throws InterruptedException {
+        // FASE 1: Prompts do plano disparados de uma vez (primeiro nível da árvore)
+        List<Node> roots = new ArrayList<>();
+        pending.incrementAndGet();
+        for (String query : queries) {
+            Node node = spawn(String.valueOf(roots.size() + 1), 1, query, null);
+            if (node != null) {
+                roots.add(node);
+            }
+        }
+        release();
+
+        // FASE 2: Aguarda a árvore assentar (sem pesquisas pendentes) ou o prazo expirar
+        try {
+            settled.get(maxTime.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Tempo de pesquisa esgotado (" + maxTime.toSeconds() + "s); seguindo com as pesquisas concluídas.");
+            stop();
+        } catch (ExecutionException e) {
+            // Não ocorre: a conclusão é sempre normal
+        }
+        return roots;
+    }
+
+    public String stats() {
+        return String.format("%d chamadas de %d, %d nós, %d subconsultas repetidas descartadas", calls.get(), maxCalls, sequence.get(), pruned.get());
+    }
+
+    public static List<Node> flatten(List<Node> roots) {
+        // Nós em pré-ordem: cada pesquisa seguida das suas subconsultas
+        List<Node> nodes = new ArrayList<>();
+        for (Node root : roots) {
+            nodes.add(root);
+            nodes.addAll(flatten(root.getChildren()));
+        }
+        return nodes;
+    }
+
+    private Node spawn(String id, int level, String query, Node branch) {
+        // Subconsultas repetidas (mesmo texto normalizado) são podadas
+        if (stopped) {
+            return null;
+        }
+        if (!seen.add(SearchReferences.normalizeQuery(query))) {
+            pruned.incrementAndGet();
+            return null;
+        }
+        if (!acquireCall()) {
+            return null;
+        }
+        Node node = new Node(id, level, query, sequence.getAndIncrement());
+        node.branch = branch != null ? branch : node;
+        node.branch.open.incrementAndGet();
+        pending.incrementAndGet();
+
+        CompletableFuture<String> call = track(search.apply(query));
+        call.whenComplete((result, error) -> {
+            node.result = error == null ? result : null;
+            if (error != null && !stopped) {
+                System.err.println("Erro na pesquisa " + id + ": " + App.rootMessage(error));
+            }
+            onSettled.accept(node);
+
+            // FASE 3: Desdobramento do nó concluído em subconsultas do próximo nível
+            if (node.result != null && level < depth && !stopped && acquireCall()) {
+                track(expand.apply(node, breadth)).whenComplete((followUps, expandError) -> {
+                    if (followUps != null) {
+                        // Até "breadth" subconsultas novas; as repetidas não ocupam vaga
+                        for (String followUp : followUps) {
+                            if (node.children.size() >= breadth) {
+                                break;
+                            }
+                            Node child = spawn(id + "." + (node.children.size() + 1), level + 1, followUp, node.branch);
+                            if (child != null) {
+                                node.children.add(child);
+                            }
+                        }
+                    }
+                    finish(node);
+                    release();
+                });
+            } else {
+                finish(node);
+                release();
+            }
+        });
+        return node;
+    }
+
+    private boolean acquireCall() {
+        // Orçamento global: chamadas e tokens da execução
+        if (budget != null && budget.isExhausted()) {
+            return false;
+        }
+        while (true) {
+            int current = calls.get();
+            if (current >= maxCalls) {
+                return false;
+            }
+            if (calls.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> track(CompletableFuture<T> call) {
+        inFlight.add(call);
+        call.whenComplete((value, error) -> inFlight.remove(call));
+        return call;
+    }
+
+    private void finish(Node node) {
+        // Nó resolvido (subconsultas já criadas): ramo sem trabalho pendente está concluído. Após o prazo,
+        // os ramos assentam pelo cancelamento e não disparam síntese: a consolidação já começou
+        if (node.branch.open.decrementAndGet() == 0 && onBranchSettled != null && !stopped) {
+            onBranchSettled.accept(node.branch);
+        }
+    }
+
+    private void release() {
+        if (pending.decrementAndGet() == 0) {
+            settled.complete(null);
+        }
+    }
+
+    private void stop() {
+        // Orçamento de tempo esgotado: nada novo é criado e as chamadas em andamento são canceladas
+        stopped = true;
+        inFlight.forEach(call -> call.cancel(true));
+    }
+}
@@ -0,0 +1,587 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class ResponseCache {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("gemini.cache", "true"));
+
+    public static final Path CACHE_DIR = Paths.get(System.getProperty("gemini.cache.dir", ".gemini-cache"));
+
+    public static final long MEMORY_MAX_BYTES = Long.getLong("gemini.cache.memoryBytes", 32L * 1024 * 1024);
+
+    public static final long SEGMENT_MAX_BYTES = Long.getLong("gemini.cache.segmentBytes", 16L * 1024 * 1024);
+
+    public static final long DISK_MAX_BYTES = Long.getLong("gemini.cache.diskBytes", 512L * 1024 * 1024);
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(Long.getLong("gemini.cache.ttlHours", 24 * 7));
+
+    public static final Duration SEARCH_TTL = Duration.ofMinutes(Long.getLong("gemini.cache.searchTtlMinutes", 60));
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static ResponseCache defaultCache;
+
+    private final Path dir;
+
+    private final long memoryMaxBytes;
+
+    private final long segmentMaxBytes;
+
+    private final long diskMaxBytes;
+
+    // Camada 1: LRU em memória limitado por bytes (ordem de acesso)
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long memoryBytes;
+
+    // Camada 2: índice em memória dos registros gravados nos segmentos em disco
+    private final Map<String, Location> index = new HashMap<>();
+
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+
+    private int activeSegment;
+
+    // Serializa as gravações em disco (segmento ativo, troca e remoção de segmentos); as leituras não o usam.
+    // Ordem dos locks: writeLock antes do lock do cache, nunca o contrário
+    private final Object writeLock = new Object();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+
+    private final AtomicLong diskHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong puts = new AtomicLong();
+
+    public ResponseCache(Path dir, long memoryMaxBytes, long segmentMaxBytes, long diskMaxBytes) throws IOException {
+        this.dir = dir;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        Files.createDirectories(dir);
+        open();
+    }
+
+    public static synchronized ResponseCache getDefault() {
+        // Cria o cache compartilhado na primeira utilização; falhas de disco desativam apenas o cache
+        if (defaultCache == null && ENABLED) {
+            try {
+                defaultCache = new ResponseCache(CACHE_DIR, MEMORY_MAX_BYTES, SEGMENT_MAX_BYTES, DISK_MAX_BYTES);
+                Runtime.getRuntime().addShutdownHook(new Thread(defaultCache::close));
+            } catch (IOException | RuntimeException e) {
+                // Inclui arquivos do cache corrompidos de forma inesperada: as chamadas seguem sem cache
+                System.err.println("Cache de respostas desativado: " + e.getMessage());
+            }
+        }
+        return defaultCache;
+    }
+
+    public static synchronized ResponseCache current() {
+        // Cache compartilhado apenas se já foi criado (não abre o disco como efeito colateral)
+        return defaultCache;
+    }
+
+    public static String key(String model, double temperature, String prompt, String responseMimeType, boolean search) {
+        // Endereçamento por conteúdo: SHA-256 dos parâmetros que determinam a resposta
+        // Cada campo é prefixado pelo tamanho para que concatenações diferentes nunca colidam
+        return sha256(field(model) + field(String.valueOf(temperature)) + field(prompt) + field(responseMimeType) + field(String.valueOf(search)));
+    }
+
+    public static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String get(String key) {
+        long now = System.currentTimeMillis();
+        Location location;
+        FileChannel channel;
+        synchronized (this) {
+            // FASE 1: Consulta ao LRU em memória
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    memoryHits.incrementAndGet();
+                    return entry.value;
+                }
+                removeFromMemory(key);
+                index.remove(key);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+
+            // FASE 2: Localização do registro nos segmentos em disco pelo índice
+            location = index.get(key);
+            if (location == null || location.expiresAt <= now) {
+                if (location != null) {
+                    index.remove(key);
+                    expirations.incrementAndGet();
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            channel = segments.get(location.segment);
+        }
+
+        // FASE 3: Leitura posicional fora do lock: um acerto em disco não bloqueia as demais consultas
+        String value;
+        try {
+            value = readValue(channel, key, location);
+        } catch (IOException e) {
+            // Registro corrompido (CRC), truncado ou segmento removido durante a leitura
+            value = null;
+        }
+        synchronized (this) {
+            if (value == null) {
+                index.remove(key, location);
+                misses.incrementAndGet();
+                return null;
+            }
+            diskHits.incrementAndGet();
+            // Promove para a memória para os próximos acessos, se outra gravação não a substituiu no meio tempo
+            if (index.get(key) == location) {
+                putInMemory(key, new Entry(value, location.expiresAt));
+            }
+            return value;
+        }
+    }
+
+    public void put(String key, String value, Duration ttl) {
+        if (value == null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        synchronized (this) {
+            putInMemory(key, new Entry(value, expiresAt));
+        }
+        puts.incrementAndGet();
+
+        // A gravação em disco não segura o lock do cache: consultas seguem enquanto o registro é escrito
+        synchronized (writeLock) {
+            try {
+                append(key, value, expiresAt);
+            } catch (IOException e) {
+                // O disco é apenas uma segunda camada: a resposta continua disponível em memória
+                System.err.println("Falha ao gravar cache em disco: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getHits() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized String stats() {
+        return String.format(
+            "cache: %d acertos (%d memória, %d disco), %d falhas, %d expirados, %d gravações, %d despejos, %d entradas em memória (%d bytes), %d no índice em disco",
+            getHits(), memoryHits.get(), diskHits.get(), misses.get(), expirations.get(), puts.get(), evictions.get(),
+            memory.size(), memoryBytes, index.size()
+        );
+    }
+
+    public void close() {
+        // Fecha os canais; o segmento ativo é reindexado por varredura na próxima abertura
+        synchronized (writeLock) {
+            synchronized (this) {
+                for (FileChannel channel : segments.values()) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // Ignora: o processo está encerrando
+                    }
+                }
+                segments.clear();
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        // FASE 1: Descoberta dos segmentos existentes (sobrevivem a reinícios da JVM)
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                .forEach(n -> ids.add(Integer.parseInt(n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+
+        // FASE 2: Reconstrução do índice
+        // Segmentos fechados têm arquivo .idx; o último (ativo) é varrido e tem a cauda incompleta truncada
+        for (int id : ids) {
+            FileChannel channel = FileChannel.open(segmentPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(id, channel);
+            Path indexPath = indexPath(id);
+            if (Files.exists(indexPath) && id != ids.get(ids.size() - 1) && loadIndex(id, indexPath, channel.size())) {
+                continue;
+            }
+            scanSegment(id, channel);
+        }
+
+        // FASE 3: Abre (ou cria) o segmento ativo para novas gravações
+        activeSegment = ids.isEmpty() ? 1 : ids.get(ids.size() - 1);
+        if (!segments.containsKey(activeSegment)) {
+            segments.put(activeSegment, openForAppend(activeSegment));
+        }
+
+        // FASE 4: Segmentos antigos só com registros expirados ou substituídos são removidos já na abertura
+        dropExpiredSegments();
+    }
+
+    private void append(String key, String value, long expiresAt) throws IOException {
+        // Formato do registro: [len chave][chave][expira em][len valor][valor][crc32]
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + keyBytes.length + 8 + 4 + valueBytes.length + 4);
+        record.putInt(keyBytes.length).put(keyBytes).putLong(expiresAt).putInt(valueBytes.length).put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        // Troca de segmento quando o ativo atinge o tamanho máximo (chamado sob writeLock)
+        FileChannel channel;
+        synchronized (this) {
+            channel = segments.get(activeSegment);
+        }
+        if (channel == null) {
+            return;  // Cache já fechado (JVM encerrando)
+        }
+        if (channel.size() > 0 && channel.size() + record.remaining() > segmentMaxBytes) {
+            rollSegment();
+            synchronized (this) {
+                channel = segments.get(activeSegment);
+            }
+        }
+
+        long start = channel.size();
+        while (record.hasRemaining()) {
+            channel.write(record, start + record.position());
+        }
+        long valueOffset = start + 4 + keyBytes.length + 8 + 4;
+        synchronized (this) {
+            index.put(key, new Location(activeSegment, valueOffset, valueBytes.length, expiresAt));
+        }
+
+        enforceDiskLimit();
+    }
+
+    private void rollSegment() throws IOException {
+        // Sela o segmento atual gravando seu índice (.idx) e inicia um novo
+        writeIndex(activeSegment);
+        FileChannel next = openForAppend(activeSegment + 1);
+        synchronized (this) {
+            activeSegment++;
+            segments.put(activeSegment, next);
+        }
+        dropExpiredSegments();
+    }
+
+    private void enforceDiskLimit() throws IOException {
+        // Remove os segmentos mais antigos enquanto o total em disco exceder o limite
+        List<FileChannel> channels;
+        synchronized (this) {
+            channels = new ArrayList<>(segments.values());
+        }
+        long total = 0;
+        for (FileChannel channel : channels) {
+            total += channel.size();
+        }
+        while (total > diskMaxBytes) {
+            int oldest;
+            synchronized (this) {
+                if (segments.size() <= 1) {
+                    return;
+                }
+                oldest = segments.firstKey();
+            }
+            total -= removeSegment(oldest, true);
+        }
+    }
+
+    private void dropExpiredSegments() throws IOException {
+        // Sem isso, registros expirados só deixariam o disco quando o limite de tamanho despejasse o segmento.
+        // Segmentos selados sem nenhum registro vivo (todos expirados ou regravados em segmento mais novo)
+        // são removidos, e os expirados saem do índice; segmentos com parte viva ficam até o despejo por tamanho
+        long now = System.currentTimeMillis();
+        List<Integer> drop = new ArrayList<>();
+        synchronized (this) {
+            Map<Integer, Integer> live = new HashMap<>();
+            Iterator<Location> it = index.values().iterator();
+            while (it.hasNext()) {
+                Location location = it.next();
+                if (location.expiresAt <= now) {
+                    it.remove();
+                    expirations.incrementAndGet();
+                } else {
+                    live.merge(location.segment, 1, Integer::sum);
+                }
+            }
+            for (int id : segments.keySet()) {
+                if (id != activeSegment && !live.containsKey(id)) {
+                    drop.add(id);
+                }
+            }
+        }
+        for (int id : drop) {
+            removeSegment(id, false);
+        }
+    }
+
+    private long removeSegment(int id, boolean eviction) throws IOException {
+        // Tira o segmento do índice sob o lock; fecha e apaga os arquivos fora dele
+        FileChannel channel;
+        synchronized (this) {
+            channel = segments.remove(id);
+            Iterator<Location> it = index.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().segment == id) {
+                    it.remove();
+                    if (eviction) {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+        if (channel == null) {
+            return 0;
+        }
+        long size = channel.size();
+        channel.close();
+        Files.deleteIfExists(segmentPath(id));
+        Files.deleteIfExists(indexPath(id));
+        return size;
+    }
+
+    private void scanSegment(int id, FileChannel channel) throws IOException {
+        // Lê registro a registro validando o CRC; um registro incompleto ou corrompido encerra a varredura
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            header.clear();
+            channel.read(header, position);
+            int keyLength = header.flip().getInt();
+            if (keyLength <= 0 || position + 4 + keyLength + 12 > size) {
+                break;
+            }
+            ByteBuffer meta = ByteBuffer.allocate(keyLength + 12);
+            channel.read(meta, position + 4);
+            meta.flip();
+            byte[] keyBytes = new byte[keyLength];
+            meta.get(keyBytes);
+            long expiresAt = meta.getLong();
+            int valueLength = meta.getInt();
+            long recordLength = 4L + keyLength + 12 + valueLength + 4;
+            if (valueLength < 0 || position + recordLength > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+            channel.read(record, position);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, (int) recordLength - 4);
+            if ((int) crc.getValue() != record.getInt((int) recordLength - 4)) {
+                break;
+            }
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            index.put(key, new Location(id, position + 4 + keyLength + 12, valueLength, expiresAt));
+            position += recordLength;
+        }
+
+        // Descarta a cauda rasgada (gravação interrompida) para que novos registros fiquem alinhados
+        if (position < size) {
+            channel.truncate(position);
+        }
+    }
+
+    private void writeIndex(int id) throws IOException {
+        // Índice do segmento selado: [len chave][chave][offset][len valor][expira em] por entrada
+        Map<String, Location> entries = new HashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, Location> e : index.entrySet()) {
+                if (e.getValue().segment == id) {
+                    entries.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel out = FileChannel.open(indexPath(id), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Location> e : entries.entrySet()) {
+                Location location = e.getValue();
+                byte[] keyBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 4 + keyBytes.length + 20) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.putInt(keyBytes.length).put(keyBytes).putLong(location.offset).putInt(location.length).putLong(location.expiresAt);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    private boolean loadIndex(int id, Path indexPath, long segmentSize) throws IOException {
+        // Índice truncado ou inconsistente (ex.: queda durante writeIndex) é ignorado e o segmento é varrido
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        Map<String, Location> loaded = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 4) {
+                return false;
+            }
+            int keyLength = buffer.getInt();
+            if (keyLength <= 0 || buffer.remaining() < keyLength + 20) {
+                return false;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            long expiresAt = buffer.getLong();
+            if (offset < 0 || length < 0 || offset + length > segmentSize) {
+                return false;
+            }
+            loaded.put(new String(keyBytes, StandardCharsets.UTF_8), new Location(id, offset, length, expiresAt));
+        }
+        index.putAll(loaded);
+        return true;
+    }
+
+    private static String readValue(FileChannel channel, String key, Location location) throws IOException {
+        // Lê o registro inteiro e confere o CRC a cada acerto: o .idx aponta só para o valor e não
+        // protege contra bits trocados no segmento depois da abertura
+        if (channel == null) {
+            throw new IOException("Segmento removido");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long start = location.offset - 4 - keyBytes.length - 12;
+        if (start < 0) {
+            throw new IOException("Registro corrompido");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + keyBytes.length + 12 + location.length + 4);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Registro truncado");
+            }
+        }
+        byte[] record = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - 4);
+        if ((int) crc.getValue() != buffer.getInt(record.length - 4) || buffer.getInt(0) != keyBytes.length
+                || !Arrays.equals(record, 4, 4 + keyBytes.length, keyBytes, 0, keyBytes.length)) {
+            throw new IOException("Registro corrompido");
+        }
+        return new String(record, 4 + keyBytes.length + 12, location.length, StandardCharsets.UTF_8);
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        removeFromMemory(key);
+        memory.put(key, entry);
+        memoryBytes += entry.bytes();
+
+        // Despeja os itens menos recentemente usados até respeitar o limite de bytes
+        Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            memoryBytes -= eldest.getValue().bytes();
+            it.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry previous = memory.remove(key);
+        if (previous != null) {
+            memoryBytes -= previous.bytes();
+        }
+    }
+
+    private FileChannel openForAppend(int id) throws IOException {
+        return FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int id) {
+        return dir.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(int id) {
+        return dir.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, id, INDEX_SUFFIX));
+    }
+
+    private static String field(String value) {
+        String v = value == null ? "" : value;
+        return v.length() + ":" + v + ";";
+    }
+
+    private static class Entry {
+        final String value;
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        long bytes() {
+            // Aproximação: 2 bytes por caractere mais o overhead do objeto
+            return value.length() * 2L + 64;
+        }
+    }
+
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final long expiresAt;
+
+        Location(int segment, long offset, int length, long expiresAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONObject;
+
+public class ReviewManifest {
+
+    // Reaproveita análises de arquivos inalterados entre execuções (false = reanalisa tudo)
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("agent.incremental", "true"));
+
+    // Intervalo git opcional (ex.: HEAD~1..HEAD): apenas arquivos alterados nele são reenviados
+    public static final String GIT_RANGE = System.getProperty("agent.gitRange");
+
+    private final Path file;
+
+    private final String model;
+
+    private final String promptVersion;
+
+    // caminho absoluto -> {size, mtime, hash, model, promptVersion, result}
+    private final Map<String, JSONObject> entries = new ConcurrentHashMap<>();
+
+    private ReviewManifest(Path file, String model, String promptVersion) {
+        this.file = file;
+        this.model = model;
+        this.promptVersion = promptVersion;
+    }
+
+    public static ReviewManifest open(String agent, String model, String promptVersion) {
+        // Um manifesto por agente, ao lado do response.md
+        ReviewManifest manifest = new ReviewManifest(Paths.get(".review-manifest-" + agent + ".json"), model, promptVersion);
+        try {
+            if (Files.exists(manifest.file)) {
+                JSONObject json = new JSONObject(Files.readString(manifest.file));
+                JSONObject saved = json.getJSONObject("entries");
+                for (String path : saved.keySet()) {
+                    manifest.entries.put(path, saved.getJSONObject(path));
+                }
+            }
+        } catch (Exception e) {
+            // Manifesto ilegível: segue como primeira execução
+            System.err.println("Manifesto de revisão ignorado: " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    public String lookup(File source) {
+        // Caminho rápido: mesmo tamanho e data de modificação dispensam leitura e hash do arquivo
+        JSONObject entry = valid(source);
+        if (entry != null && entry.getLong("size") == source.length() && entry.getLong("mtime") == source.lastModified()) {
+            return entry.getString("result");
+        }
+        return null;
+    }
+
+    public String lookup(File source, String hash) {
+        // Arquivo tocado mas com o mesmo conteúdo: reaproveita e atualiza tamanho/data
+        JSONObject entry = valid(source);
+        if (entry != null && entry.getString("hash").equals(hash)) {
+            entry.put("size", source.length()).put("mtime", source.lastModified());
+            return entry.getString("result");
+        }
+        return null;
+    }
+
+    public String stale(File source) {
+        // Última análise conhecida, mesmo que o arquivo tenha mudado (arquivos fora do intervalo git)
+        JSONObject entry = valid(source);
+        return entry != null ? entry.getString("result") : null;
+    }
+
+    public void put(File source, String hash, String result) {
+        entries.put(source.getAbsolutePath(), new JSONObject()
+            .put("size", source.length())
+            .put("mtime", source.lastModified())
+            .put("hash", hash)
+            .put("model", model)
+            .put("promptVersion", promptVersion)
+            .put("result", result));
+    }
+
+    public void save(Collection<Path> files) {
+        // Descarta entradas de arquivos que não existem mais no projeto
+        Set<String> current = new HashSet<>();
+        files.forEach(f -> current.add(f.toAbsolutePath().toString()));
+        entries.keySet().retainAll(current);
+
+        try {
+            // Gravação atômica: um manifesto interrompido não substitui o anterior
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, new JSONObject().put("entries", new JSONObject(entries)).toString());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Falha ao gravar manifesto de revisão: " + e.getMessage());
+        }
+    }
+
+    public static Set<String> changedFiles(File rootDir, String range) {
+        // Caminhos absolutos dos arquivos alterados no intervalo, ou null se o git não responder
+        try {
+            String top = git(rootDir, "rev-parse", "--show-toplevel").trim();
+            Set<String> changed = new HashSet<>();
+            for (String line : git(rootDir, "diff", "--name-only", range).split("\n")) {
+                if (!line.isBlank()) {
+                    changed.add(Paths.get(top, line.trim()).toFile().getAbsolutePath());
+                }
+            }
+            return changed;
+        } catch (Exception e) {
+            System.err.println("Erro ao consultar intervalo git '" + range + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    private JSONObject valid(File source) {
+        // Entradas de outro modelo ou de outra versão do prompt não são reaproveitadas
+        JSONObject entry = entries.get(source.getAbsolutePath());
+        if (entry == null || !model.equals(entry.optString("model")) || !promptVersion.equals(entry.optString("promptVersion"))) {
+            return null;
+        }
+        return entry;
+    }
+
+    private static String git(File dir, String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 3];
+        command[0] = "git";
+        command[1] = "-C";
+        command[2] = dir.getAbsolutePath();
+        System.arraycopy(args, 0, command, 3, args.length);
+
+        // A saída é lida em paralelo com a espera: ler até o fim antes do waitFor travaria para sempre
+        // um git que não termina (ex.: aguardando credenciais ou um lock), e o limite de tempo nunca valeria
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        CompletableFuture<String> output = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new String(process.getInputStream().readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("git não respondeu em 30 s");
+        }
+        String text;
+        try {
+            text = output.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Falha ao ler a saída do git: " + App.rootMessage(e));
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(text.trim());
+        }
+        return text;
+    }
+}
@@ -0,0 +1,395 @@
+import javax.swing.JFileChooser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+public class ReviewPipeline {
+
+    private static final String RESPONSE_FILE = "response.md";
+
+    private final String agent;
+
+    private final String model;
+
+    private final double temperature;
+
+    // Incrementado pelo agente quando o prompt por arquivo muda: invalida as análises do manifesto
+    private final String promptVersion;
+
+    // Instruções do agente: parte estável do prompt, antes do conteúdo variável de cada arquivo
+    private final String instructions;
+
+    // Varredura das subpastas (agentes de código) ou só da pasta selecionada (revisores de texto)
+    private boolean subfolders;
+
+    // Fora do modo map-reduce, analisa os arquivos em paralelo em vez de em sequência com "Respostas Anteriores";
+    // ligado nos agentes de código: com agent.parallelism > 1 (padrão 8), nenhum arquivo recebe as análises anteriores
+    private boolean parallel;
+
+    // Orçamento de tokens da execução; null = sem limite
+    private TokenBudget budget;
+
+    // Etapa de redução (trechos de um arquivo e grupos de resumos); null = concatenação das tabelas
+    private Function<List<String>, String> combine;
+
+    // Síntese final (estrutura, resumos) -> relatório; null = o relatório é a sequência de seções por arquivo
+    private BinaryOperator<String> synthesis;
+
+    private ReviewManifest manifest;
+
+    private Set<String> changedFiles;
+
+    // Prefixo estável (estrutura + instruções) enviado uma vez ao cache de contexto da API
+    private ContextCache context;
+
+    // Diário da execução: etapas concluídas sobrevivem a falhas e interrupções (retomada com --resume)
+    private RunJournal journal;
+
+    // Seções por arquivo gravadas à medida que ficam prontas
+    private ReportWriter report;
+
+    public ReviewPipeline(String agent, String model, double temperature, String promptVersion, String instructions) {
+        this.agent = agent;
+        this.model = model;
+        this.temperature = temperature;
+        this.promptVersion = promptVersion;
+        this.instructions = instructions;
+    }
+
+    public ReviewPipeline subfolders(boolean subfolders) {
+        this.subfolders = subfolders;
+        return this;
+    }
+
+    public ReviewPipeline parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public ReviewPipeline budget(TokenBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    public ReviewPipeline combine(Function<List<String>, String> combine) {
+        this.combine = combine;
+        return this;
+    }
+
+    public ReviewPipeline synthesis(BinaryOperator<String> synthesis) {
+        this.synthesis = synthesis;
+        return this;
+    }
+
+    public void run(String[] args) {
+        // FASE 1: SELEÇÃO DE PROJETO VIA INTERFACE GRÁFICA
+        // Cria seletor de diretórios nativo do sistema operacional
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+
+        // Exibe diálogo e aguarda seleção do usuário
+        int option = chooser.showOpenDialog(null);
+
+        // Valida se o usuário confirmou a seleção
+        if (option != JFileChooser.APPROVE_OPTION) {
+            System.err.println("Nenhuma pasta selecionada. Encerrando.");
+            return;
+        }
+
+        // Obtém referência para o diretório selecionado
+        review(chooser.getSelectedFile(), args);
+    }
+
+    public void review(File rootDir, String[] args) {
+        try {
+            // FASE 2: ANÁLISE ESTRUTURAL DO PROJETO
+            System.out.println("Estruturando os arquivos da pasta '" + rootDir.getName() + "'...");
+
+            // Varredura NIO compartilhada: respeita .gitignore e globs, limita tamanho e descarta binários
+            ProjectScanner scanner = new ProjectScanner(rootDir.toPath(), subfolders);
+
+            // Análises independentes (modo map-reduce) são reaproveitadas entre execuções pelo manifesto
+            if (ReviewManifest.ENABLED && MapReduce.ENABLED) {
+                manifest = ReviewManifest.open(agent, model, promptVersion);
+            }
+
+            // Intervalo git opcional: só arquivos alterados nele são reenviados
+            if (ReviewManifest.GIT_RANGE != null) {
+                changedFiles = ReviewManifest.changedFiles(rootDir, ReviewManifest.GIT_RANGE);
+            }
+
+            // Com --resume, os arquivos já analisados na execução interrompida desta pasta são pulados
+            journal = RunJournal.open(agent, model, promptVersion, rootDir.getAbsolutePath(), RunJournal.resumeRequested(args));
+
+            // FASE 3: ANÁLISE INDIVIDUAL DE ARQUIVOS
+            // As seções vão para o arquivo de resposta assim que ficam prontas, na ordem da varredura (progresso
+            // visível e preservado se a execução for interrompida); com síntese, o relatório final as substitui
+            String header = "# Relatório " + agent + " em " + new Date() + "\n\n";
+            report = ReportWriter.open(Paths.get(RESPONSE_FILE), synthesis != null ? header + "_Relatório em andamento: resumos por arquivo._\n\n" : header);
+            StringBuilder accumulated = new StringBuilder();
+            String reportStructure;
+
+            if (MapReduce.ENABLED) {
+                // MODO MAP-REDUCE (map): cada arquivo é analisado isoladamente, só com o próprio caminho,
+                // de modo que o tamanho de cada prompt não cresce com a quantidade de arquivos.
+                // A análise começa enquanto a varredura ainda está em andamento.
+                // O prefixo comum é só o texto das instruções: em geral abaixo do mínimo do cache no servidor,
+                // caso em que segue no próprio prompt
+                context = ContextCache.create(model, instructions);
+                System.out.println("Analisando arquivos à medida que são encontrados (até " + FanOut.PARALLELISM + " simultâneos)...");
+
+                // A posição de cada seção é reservada quando o arquivo é encontrado (ordem da varredura);
+                // sem síntese, as seções não ficam em memória: vão direto para o relatório
+                List<String> summaries = new ArrayList<>();
+                for (String summary : FanOut.<Map.Entry<Long, Path>, String>map(push -> scanner.scan(path -> push.accept(Map.entry(report.next(), path))),
+                        FanOut.PARALLELISM, entry -> record(entry.getKey(), analyzeFile(entry.getValue().toFile(), null)))) {
+                    if (summary != null) {
+                        summaries.add(summary);
+                    }
+                }
+                System.out.println("Varredura: " + scanner.summary());
+
+                // MODO MAP-REDUCE (reduce): resumos consolidados em árvore, com até agent.fanIn por chamada;
+                // sem etapa de redução, o relatório já é a sequência de seções na ordem original
+                if (combine != null) {
+                    for (String partial : MapReduce.reduce(summaries, MapReduce.FAN_IN, FanOut.PARALLELISM, combine)) {
+                        accumulated.append(partial).append("\n\n");
+                    }
+                }
+                reportStructure = MapReduce.truncate(scanner.getStructure(), MapReduce.MAX_STRUCTURE_CHARS);
+            } else {
+                // Demais modos usam a estrutura completa em cada prompt: varredura antes da análise
+                List<Path> files = scanner.scanAll();
+                String structure = scanner.getStructure();
+                reportStructure = structure;
+                System.out.println("Varredura: " + scanner.summary());
+
+                // Estrutura e instruções formam o prefixo comum a todos os prompts: enviado uma única vez
+                context = ContextCache.create(model, "Estrutura de Pastas e Arquivos:\n" + structure + "\n\n" + instructions);
+
+                if (parallel && FanOut.PARALLELISM > 1) {
+                    // MODO PARALELO: arquivos analisados simultaneamente (limite em agent.parallelism)
+                    // Sem "Respostas Anteriores", cada análise independe das demais e pode rodar em paralelo;
+                    // -Dagent.parallelism=1 volta ao modo sequencial, com as respostas anteriores como contexto
+                    System.out.println("Analisando " + files.size() + " arquivos (até " + FanOut.PARALLELISM + " simultâneos)...");
+                    List<String> summaries = FanOut.<Map.Entry<Long, Path>, String>map(push -> files.forEach(path -> push.accept(Map.entry(report.next(), path))),
+                        FanOut.PARALLELISM, entry -> record(entry.getKey(), analyzeFile(entry.getValue().toFile(), null)));
+
+                    // Resumos acumulados na ordem original dos arquivos: prompt de síntese estável entre execuções
+                    for (String summary : summaries) {
+                        if (summary != null) {
+                            accumulated.append(summary);
+                        }
+                    }
+                } else {
+                    // MODO SEQUENCIAL: cada análise recebe as respostas anteriores como contexto
+                    for (Path path : files) {
+                        String summary = analyzeFile(path.toFile(), accumulated.toString());
+                        report.append(summary);
+                        if (summary != null) {
+                            accumulated.append(summary);
+                        }
+                    }
+                }
+            }
+
+            // Persiste o manifesto antes da síntese: uma falha nela não perde as análises já pagas
+            if (manifest != null) {
+                manifest.save(scanner.getFiles());
+            }
+
+            // FASE 4: SÍNTESE E GERAÇÃO DO RELATÓRIO FINAL
+            if (synthesis == null) {
+                report.close();
+                System.out.println("Relatório: " + report.stats());
+            } else {
+                String finalReport = synthesis.apply(reportStructure, accumulated.toString());
+
+                // Sem síntese, os resumos por arquivo já gravados permanecem como relatório
+                if (finalReport == null) {
+                    report.close();
+                    System.err.println("Síntese não gerada; resumos por arquivo mantidos em " + RESPONSE_FILE);
+                    return;
+                }
+
+                // FASE 5: PERSISTÊNCIA DO RELATÓRIO FINAL
+                // Persiste apenas o relatório final (não as análises intermediárias), com o cabeçalho da execução
+                report.replaceWith(header + finalReport);
+            }
+            journal.complete();
+
+            // Confirma conclusão do processo
+            System.out.println("Relatório salvo em " + RESPONSE_FILE);
+            if (budget != null) {
+                System.out.println(budget.stats());
+            }
+
+        } catch (IOException e) {
+            // TRATAMENTO ESPECÍFICO: Falhas de entrada/saída
+            System.err.println("Erro de I/O: " + e.getMessage());
+        } catch (Exception e) {
+            // TRATAMENTO GERAL: Qualquer outra falha no processo
+            System.err.println("Erro no " + agent + ": " + e.getMessage());
+        } finally {
+            // Remove o cache de contexto do servidor, mesmo após falha
+            if (context != null) {
+                context.close();
+            }
+            // Mantém o diário no disco se a execução não chegou ao fim
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Erro de I/O: " + e.getMessage());
+                }
+            }
+            // Mantém no arquivo as seções já gravadas, mesmo após falha
+            if (report != null) {
+                try {
+                    report.close();
+                } catch (IOException e) {
+                    System.err.println("Erro de I/O: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private String record(long sequence, String summary) {
+        // Grava a seção na sua posição do relatório parcial; só é devolvida se a síntese for usá-la
+        report.write(sequence, summary);
+        return synthesis != null ? summary : null;
+    }
+
+    private String analyzeFile(File file, String previous) {
+        try {
+            // Execução retomada: arquivo já analisado antes da interrupção
+            String done = journal != null ? journal.get("arquivo", file.getAbsolutePath()) : null;
+            if (done != null) {
+                System.out.println("Analisando " + file.getAbsolutePath() + "...retomado do diário de execução.");
+                return done;
+            }
+
+            // Orçamento da execução esgotado: os arquivos restantes não são enviados
+            if (budget != null && budget.isExhausted()) {
+                System.out.println("Analisando " + file.getAbsolutePath() + "...ignorado (orçamento de tokens esgotado).");
+                return null;
+            }
+
+            // Só análises sem contexto de outros arquivos podem ser reaproveitadas
+            boolean reusable = manifest != null && previous == null;
+            if (reusable) {
+                String cached = manifest.lookup(file);
+                if (cached != null) {
+                    System.out.println("Analisando " + file.getAbsolutePath() + "...reaproveitado do manifesto.");
+                    return cached;
+                }
+            }
+
+            // Fora do intervalo git: não é reenviado; usa a última análise conhecida, se houver
+            if (changedFiles != null && !changedFiles.contains(file.getAbsolutePath())) {
+                String cached = reusable ? manifest.stale(file) : null;
+                System.out.println("Analisando " + file.getAbsolutePath() + (cached != null ? "...reaproveitado do manifesto." : "...ignorado (fora do intervalo git)."));
+                return cached;
+            }
+
+            // Tenta ler conteúdo do arquivo como texto
+            String content;
+            try {
+                content = ProjectScanner.read(file.toPath());
+            } catch (IOException e) {
+                // Ignora arquivos que não podem ser lidos como texto
+                // (binários, imagens, etc.) sem interromper o processo
+                System.out.println("Analisando " + file.getAbsolutePath() + "...descartado por não ser arquivo de texto.");
+                return null;
+            }
+
+            // Arquivo com data alterada mas conteúdo idêntico também é reaproveitado
+            String hash = reusable ? ResponseCache.sha256(content) : null;
+            if (reusable) {
+                String cached = manifest.lookup(file, hash);
+                if (cached != null) {
+                    System.out.println("Analisando " + file.getAbsolutePath() + "...reaproveitado do manifesto.");
+                    return cached;
+                }
+            }
+
+            // As respostas anteriores (modo sequencial) mudam a cada arquivo: vêm depois do prefixo estável
+            String history = previous != null ? "Respostas Anteriores:\n" + previous + "\n\n" : "";
+
+            // Arquivos acima do orçamento de tokens são divididos em trechos analisados em paralelo
+            List<Chunker.Chunk> chunks = Chunker.split(content, file.getName());
+            String response;
+            if (chunks.size() == 1) {
+                response = analyzeContent(file, history, content);
+            } else {
+                List<String> parts = FanOut.map(chunks, FanOut.PARALLELISM, chunk -> analyzeContent(file, history, Chunker.describe(chunk, chunks.size())));
+                // Trechos fundidos pela etapa de redução do agente, ou tabelas reunidas sob o mesmo arquivo;
+                // um trecho sem resposta invalida o arquivo inteiro (resultado parcial não é gravado no manifesto)
+                if (parts.contains(null)) {
+                    response = null;
+                } else {
+                    response = combine != null ? combine.apply(parts) : String.join("\n\n", parts);
+                }
+            }
+
+            // Sem resposta (chamada ou trecho com falha): o arquivo fica fora do relatório, do manifesto e do diário
+            if (response == null) {
+                System.out.println("Analisando " + file.getAbsolutePath() + "...falhou (sem resposta do modelo).");
+                return null;
+            }
+
+            String section = "## Resumo de " + file.getName() + "\n" + response + "\n\n";
+            if (reusable) {
+                manifest.put(file, hash, section);
+            }
+            if (journal != null) {
+                journal.record("arquivo", file.getAbsolutePath(), section);
+            }
+
+            // Linha única por arquivo: no modo paralelo as mensagens não se misturam
+            System.out.println("Analisando " + file.getAbsolutePath() + "...processado.");
+            return section;
+        } catch (InterruptedException e) {
+            // Execução interrompida: preserva o sinal para a fan-out encerrar as demais análises
+            Thread.currentThread().interrupt();
+            System.out.println("Analisando " + file.getAbsolutePath() + "...interrompido.");
+            return null;
+        } catch (Exception e) {
+            // Demais falhas (orçamento, API, trechos) não interrompem o processo, mas não se passam por arquivo binário
+            System.out.println("Analisando " + file.getAbsolutePath() + "...falhou: " + App.rootMessage(e));
+            return null;
+        }
+    }
+
+    private String analyzeContent(File file, String history, String content) {
+        // Prompt contextualizado: o prefixo estável (estrutura + instruções) vem do cache de contexto,
+        // aqui fica apenas a parte que muda a cada arquivo; sem data/hora, para que a mesma revisão
+        // tenha o mesmo prompt em outra execução (cache de respostas e single-flight)
+        String prompt = String.format(
+            "%s" +
+            "Arquivo: %s\n\n" +
+            "Conteúdo do arquivo:\n%s",
+            history,
+            file.getAbsolutePath(),
+            content
+        );
+
+        // Executa a análise do arquivo
+        return App.getGeminiCompletion(
+            model,
+            temperature,
+            prompt,
+            "text/plain",
+            false,  // Análise baseada no conteúdo fornecido
+            new GeminiOptions().budget(budget).context(context)
+        );
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+public class RunJournal implements Closeable {
+
+    // Argumento de linha de comando que retoma a execução anterior interrompida
+    public static final String RESUME_ARG = "--resume";
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    // etapa + chave -> resultado das etapas concluídas (lidas do diário ou registradas nesta execução)
+    private final Map<String, String> completed = new ConcurrentHashMap<>();
+
+    private final Thread interruptHint;
+
+    private int resumed;
+
+    private volatile boolean finished;
+
+    private RunJournal(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        // Ctrl-C ou falha: o diário fica no disco e a próxima execução pode continuar dele
+        this.interruptHint = new Thread(() -> {
+            if (!finished) {
+                System.err.println("Execução interrompida; etapas concluídas estão em " + file + " (retome com " + RESUME_ARG + ").");
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(interruptHint);
+    }
+
+    public static boolean resumeRequested(String[] args) {
+        return args != null && Arrays.asList(args).contains(RESUME_ARG);
+    }
+
+    public static RunJournal open(String agent, String model, String promptVersion, String input, boolean resume) throws IOException {
+        // Um diário por agente; o cabeçalho identifica a execução (modelo, versão do prompt e entrada, ex.: pasta ou tema).
+        // Com outra versão do prompt, as etapas registradas não são reaproveitadas
+        Path file = Paths.get(".run-journal-" + agent + ".jsonl");
+        JSONObject header = new JSONObject().put("agent", agent).put("model", model).put("promptVersion", promptVersion).put("input", input);
+
+        Map<String, String> previous = null;
+        if (Files.exists(file)) {
+            previous = read(file, header);
+            if (!resume) {
+                System.out.println("Execução anterior incompleta descartada (use " + RESUME_ARG + " para continuar dela).");
+                previous = null;
+            } else if (previous == null) {
+                System.out.println("Diário de execução de outra entrada, modelo ou versão do prompt; começando do início.");
+            }
+        }
+
+        FileChannel channel;
+        if (previous != null) {
+            // Retomada: mantém o diário e acrescenta as novas etapas ao final,
+            // depois de descartar uma última linha incompleta
+            byte[] bytes = Files.readAllBytes(file);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.truncate(end);
+            channel.position(end);
+        } else {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        RunJournal journal = new RunJournal(file, channel);
+        if (previous != null) {
+            journal.completed.putAll(previous);
+            System.out.println("Retomando execução anterior: " + previous.size() + " etapas já concluídas.");
+        } else {
+            journal.append(header);
+        }
+        return journal;
+    }
+
+    public String get(String step, String key) {
+        // Resultado da etapa concluída, ou null se ainda precisa ser executada
+        String result = completed.get(step + "\u0000" + key);
+        if (result != null) {
+            synchronized (this) {
+                resumed++;
+            }
+        }
+        return result;
+    }
+
+    public void record(String step, String key, String result) {
+        // Write-ahead: a etapa só conta como concluída depois de gravada e sincronizada no disco
+        if (result == null) {
+            return;
+        }
+        completed.put(step + "\u0000" + key, result);
+        try {
+            append(new JSONObject().put("step", step).put("key", key).put("result", result));
+        } catch (IOException e) {
+            System.err.println("Falha ao gravar diário de execução " + file + ": " + e.getMessage());
+        }
+    }
+
+    public String step(String step, String key, Supplier<String> action) {
+        // Executa a etapa só se ela não constar no diário; o resultado é registrado ao concluir
+        String result = get(step, key);
+        if (result == null) {
+            result = action.get();
+            record(step, key, result);
+        }
+        return result;
+    }
+
+    public synchronized String stats() {
+        return String.format("diário %s: %d etapas registradas, %d reaproveitadas da execução anterior", file, completed.size(), resumed);
+    }
+
+    public void complete() throws IOException {
+        // Execução concluída: o diário não é mais necessário
+        finished = true;
+        close();
+        Files.deleteIfExists(file);
+        try {
+            Runtime.getRuntime().removeShutdownHook(interruptHint);
+        } catch (IllegalStateException e) {
+            // JVM já em encerramento
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // Fechado sem complete(): o diário fica no disco para uma retomada
+        if (channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    private synchronized void append(JSONObject record) throws IOException {
+        // Uma linha JSON por registro; force() garante que ele sobrevive a uma queda logo em seguida
+        if (!channel.isOpen()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static Map<String, String> read(Path file, JSONObject header) {
+        // Etapas do diário existente, ou null se ele for de outra execução (agente, modelo, versão do prompt ou entrada)
+        Map<String, String> steps = new ConcurrentHashMap<>();
+        try {
+            String[] lines = Files.readString(file).split("\n");
+            if (lines.length == 0 || lines[0].isBlank() || !new JSONObject(lines[0]).similar(header)) {
+                return null;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                try {
+                    JSONObject record = new JSONObject(lines[i]);
+                    steps.put(record.getString("step") + "\u0000" + record.getString("key"), record.getString("result"));
+                } catch (Exception e) {
+                    // Última linha incompleta (queda durante a gravação): descartada
+                }
+            }
+            return steps;
+        } catch (Exception e) {
+            System.err.println("Diário de execução ilegível, ignorado: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.net.URI;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class SearchReferences {
+
+    private static final SearchReferences DEFAULT = new SearchReferences();
+
+    private static class Reference {
+
+        private final String uri;
+
+        private final String title;
+
+        private final long order;
+
+        // Buscas (normalizadas) que citaram a fonte; a mesma busca repetida conta uma vez
+        private final Set<String> queries = new LinkedHashSet<>();
+
+        Reference(String uri, String title, long order) {
+            this.uri = uri;
+            this.title = title;
+            this.order = order;
+        }
+    }
+
+    // Mesma fonte por URI; o título só identifica a fonte quando é título de página, pois a API
+    // costuma devolver apenas o domínio como título e páginas diferentes do mesmo site se fundiriam
+    private final Map<String, Reference> byUri = new HashMap<>();
+
+    private final Map<String, Reference> byTitle = new HashMap<>();
+
+    private final List<Reference> references = new ArrayList<>();
+
+    private final Set<String> searches = new LinkedHashSet<>();
+
+    private long citations;
+
+    public static SearchReferences getDefault() {
+        // Índice compartilhado pela execução: todas as buscas com fundamentação alimentam a mesma lista
+        return DEFAULT;
+    }
+
+    public static String normalizeQuery(String query) {
+        // Sem acentos, caixa e pontuação: variações triviais da mesma pergunta contam como repetidas
+        String plain = Normalizer.normalize(query, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return plain.toLowerCase().replaceAll("[^\\p{Alnum}]+", " ").trim();
+    }
+
+    public synchronized void add(String query, JSONArray refs) {
+        // refs: [{uri, title}] extraídos de groundingMetadata.groundingChunks de uma busca
+        String search = normalizeQuery(query);
+        searches.add(search);
+        for (int i = 0; i < refs.length(); i++) {
+            JSONObject ref = refs.getJSONObject(i);
+            String uri = ref.getString("uri");
+            String title = ref.optString("title", "");
+            String uriKey = normalizeUri(uri);
+            String titleKey = isDomain(title) ? "" : normalizeQuery(title);
+
+            Reference reference = byUri.get(uriKey);
+            if (reference == null && !titleKey.isEmpty()) {
+                reference = byTitle.get(titleKey);
+            }
+            if (reference == null) {
+                reference = new Reference(uri, title, references.size());
+                references.add(reference);
+            }
+            // Registra também os aliases (URI ou título novos da mesma fonte)
+            byUri.putIfAbsent(uriKey, reference);
+            if (!titleKey.isEmpty()) {
+                byTitle.putIfAbsent(titleKey, reference);
+            }
+            if (reference.queries.add(search)) {
+                citations++;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return references.size();
+    }
+
+    public synchronized String toMarkdown() {
+        // Lista única ordenada pelas fontes citadas em mais buscas, depois pela ordem de chegada
+        if (references.isEmpty()) {
+            return "";
+        }
+        List<Reference> ranked = new ArrayList<>(references);
+        ranked.sort(Comparator.comparingInt((Reference reference) -> reference.queries.size()).reversed()
+            .thenComparingLong(reference -> reference.order));
+
+        StringBuilder sb = new StringBuilder("# Referências\n\n");
+        for (Reference reference : ranked) {
+            if (reference.title != null && !reference.title.isEmpty()) {
+                sb.append("- [").append(reference.title).append("](").append(reference.uri).append(")");
+            } else {
+                sb.append("- ").append(reference.uri);
+            }
+            if (reference.queries.size() > 1) {
+                sb.append(" (citada em ").append(reference.queries.size()).append(" buscas)");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    public synchronized String stats() {
+        return String.format("%d referências únicas de %d citações em %d buscas", references.size(), citations, searches.size());
+    }
+
+    private static boolean isDomain(String title) {
+        // Título sem espaços no formato de host (ex.: "pt.wikipedia.org") não distingue páginas
+        return title.trim().toLowerCase().matches("(www\\.)?([\\p{Alnum}-]+\\.)+\\p{Alpha}{2,}");
+    }
+
+    private static String normalizeUri(String uri) {
+        // Host sem caixa nem "www.", sem esquema, fragmento e barra final (http e https contam como a mesma fonte)
+        try {
+            URI parsed = new URI(uri.trim());
+            String host = parsed.getHost() != null ? parsed.getHost().toLowerCase().replaceFirst("^www\\.", "") : "";
+            String path = parsed.getRawPath() != null ? parsed.getRawPath().replaceAll("/+$", "") : "";
+            String query = parsed.getRawQuery() != null ? "?" + parsed.getRawQuery() : "";
+            return host + path + query;
+        } catch (Exception e) {
+            return uri.trim().toLowerCase();
+        }
+    }
+}
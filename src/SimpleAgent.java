@@ -1,3 +1,6 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Date;
@@ -14,18 +17,27 @@ public class SimpleAgent {
 
     public static void main(String[] args) {
         try {
-            // FASE 1: Chamada à API Gemini
-            // Utiliza método centralizado da classe App para comunicação
-            // Parâmetros: modelo, temperatura, prompt, tipo resposta, busca
-            String response = App.getGeminiCompletion(MODEL, TEMPERATURE, USER_PROMPT, "text/plain", false);
-            
-            // FASE 2: Formatação e persistência da resposta
+            // FASE 1: Preparação do arquivo de destino
             // Cria cabeçalho Markdown com timestamp para identificação
-            // Combina cabeçalho com resposta do modelo
-            String formattedContent = "# Resposta do Gemini em " + new Date() + "\n\n" + response;
-            
-            // Grava conteúdo formatado no arquivo de destino
-            Files.writeString(Paths.get(RESPONSE_FILE), formattedContent);
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(RESPONSE_FILE))) {
+                writer.write("# Resposta do Gemini em " + new Date() + "\n\n");
+                writer.flush();
+
+                // FASE 2: Chamada à API Gemini em modo streaming
+                // Cada trecho recebido é gravado e descarregado imediatamente no arquivo
+                // Parâmetros: modelo, temperatura, prompt, tipo resposta, callback de texto
+                boolean ok = App.streamGeminiCompletion(MODEL, TEMPERATURE, USER_PROMPT, "text/plain", text -> {
+                    try {
+                        writer.write(text);
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (!ok) {
+                    writer.write("null");
+                }
+            }
             
             // FASE 3: Feedback de sucesso para o usuário
             System.out.println("Resposta salva em " + RESPONSE_FILE);
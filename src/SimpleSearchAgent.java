@@ -23,6 +23,12 @@ public class SimpleSearchAgent {
             // Adiciona contexto temporal para identificação da consulta
             String formattedContent = "# Resposta do Gemini em " + new Date() + "\n\n" + response;
             
+            // Fontes da busca que fundamentou a resposta (índice de referências da execução)
+            String references = SearchReferences.getDefault().toMarkdown();
+            if (!references.isEmpty()) {
+                formattedContent += "\n\n" + references;
+            }
+            
             // FASE 3: Persistência da resposta fundamentada
             // Salva conteúdo completo incluindo referências automáticas
             Files.writeString(Paths.get(RESPONSE_FILE), formattedContent);
@@ -0,0 +1,117 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            // FASE 1: Junta-se a uma chamada idêntica já em andamento, se houver
+            Flight<V> existing = flights.get(key);
+            if (existing != null) {
+                CompletableFuture<V> follower = existing.join();
+                if (follower != null) {
+                    coalesced.incrementAndGet();
+                    return follower;
+                }
+                // A chamada existente acabou de ser abandonada: tenta registrar uma nova
+                flights.remove(key, existing);
+                continue;
+            }
+
+            // FASE 2: Registra esta chamada como líder para a chave
+            Flight<V> flight = new Flight<>();
+            if (flights.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+            CompletableFuture<V> leader = flight.join();
+            executions.incrementAndGet();
+
+            // FASE 3: Executa uma única troca HTTP e entrega o mesmo resultado a todos
+            CompletableFuture<V> shared;
+            try {
+                shared = call.get();
+            } catch (RuntimeException e) {
+                shared = CompletableFuture.failedFuture(e);
+            }
+            shared.whenComplete((value, error) -> flights.remove(key, flight));
+            flight.start(shared);
+            return leader;
+        }
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    public String stats() {
+        return String.format("single-flight: %d execuções, %d chamadas agrupadas, %d em andamento",
+            executions.get(), coalesced.get(), flights.size());
+    }
+
+    private static class Flight<V> {
+
+        // Resultado compartilhado; cada chamador recebe uma cópia própria
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private volatile CompletableFuture<V> shared;
+
+        CompletableFuture<V> join() {
+            // Incrementa os interessados, recusando uma chamada que já foi cancelada por todos
+            int current;
+            do {
+                current = waiters.get();
+                if (current < 0) {
+                    return null;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+
+            CompletableFuture<V> copy = result.copy();
+            copy.whenComplete((value, error) -> {
+                // Cancelamento ou timeout de uma cópia libera sua participação;
+                // a troca HTTP só é cancelada quando nenhum chamador a aguarda mais
+                if (error != null && !result.isDone() && waiters.decrementAndGet() == 0
+                        && waiters.compareAndSet(0, -1)) {
+                    CompletableFuture<V> call = shared;
+                    if (call != null) {
+                        call.cancel(true);
+                    }
+                    result.cancel(true);
+                }
+            });
+            return copy;
+        }
+
+        void start(CompletableFuture<V> call) {
+            shared = call;
+            call.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+            if (waiters.get() < 0) {
+                call.cancel(true);
+            }
+        }
+    }
+}
@@ -1,10 +1,11 @@
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.Timer;
 import java.util.TimerTask;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 public class StocksLoggerAgent {
@@ -17,10 +18,19 @@ public class StocksLoggerAgent {
 
     public static final String[] STOCKS = {"AAPL", "MSFT", "GOOGL"};
 
+    // Exportação do histórico no formato JSON anterior (array indentado), gerada ao parar a coleta
     private static final String HISTORY_FILE = "response.json";
 
     private final Timer timer = new Timer(true);
 
+    // Coleta em andamento: stopLogging espera por ela antes de exportar e fechar o histórico
+    private final Object tick = new Object();
+
+    private boolean stopped;
+
+    // Histórico em segmentos append-only (TimeSeriesStore.DIR): cada coleta acrescenta um registro
+    private TimeSeriesStore store;
+
     public static void main(String[] args) {
         // Cria instância do agente de monitoramento
         StocksLoggerAgent agent = new StocksLoggerAgent();
@@ -39,12 +49,33 @@ public class StocksLoggerAgent {
     }
 
     public void startLogging() {
+        try {
+            // Abre o histórico recuperando uma cauda incompleta de uma queda anterior
+            TimeSeriesStore opened = TimeSeriesStore.open(TimeSeriesStore.DIR);
+            if (opened.size() == 0 && Files.exists(Paths.get(HISTORY_FILE))) {
+                // Primeira execução com segmentos: importa o histórico do formato anterior. A importação é atômica;
+                // se falhar, o histórico fica sem abrir e o response.json não é sobrescrito ao parar
+                opened.close();
+                long imported = TimeSeriesStore.importJson(Paths.get(HISTORY_FILE), TimeSeriesStore.DIR);
+                System.out.println(imported + " registros de " + HISTORY_FILE + " importados para " + TimeSeriesStore.DIR);
+                opened = TimeSeriesStore.open(TimeSeriesStore.DIR);
+            }
+            store = opened;
+        } catch (Exception e) {
+            System.err.println("Erro ao abrir histórico de preços: " + e.getMessage());
+            return;
+        }
+
         // Cria tarefa personalizada para execução periódica
         TimerTask task = new TimerTask() {
             @Override
             public void run() {
-                // Chama método de coleta de dados em cada execução agendada
-                logStockPrices();
+                // Chama método de coleta de dados em cada execução agendada (nenhuma depois de parar)
+                synchronized (tick) {
+                    if (!stopped) {
+                        logStockPrices();
+                    }
+                }
             }
         };
 
@@ -54,8 +85,28 @@ public class StocksLoggerAgent {
     }
 
     public void stopLogging() {
-        // Cancela timer e todas as execuções pendentes
+        // Cancela timer e todas as execuções pendentes; cancel() não interrompe uma coleta já em andamento,
+        // então aguarda que ela termine (e grave seu registro) antes de exportar e fechar o histórico
         timer.cancel();
+        synchronized (tick) {
+            stopped = true;
+        }
+
+        // Exporta o histórico completo no formato anterior e fecha os segmentos
+        if (store != null) {
+            try {
+                store.exportJson(Paths.get(HISTORY_FILE));
+                System.out.println(store.stats());
+                System.out.println("Histórico exportado para " + HISTORY_FILE);
+            } catch (Exception e) {
+                System.err.println("Erro ao exportar histórico de preços: " + e.getMessage());
+            }
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Erro de I/O: " + e.getMessage());
+            }
+        }
     }
 
     private void logStockPrices() {
@@ -95,34 +146,18 @@ public class StocksLoggerAgent {
             JSONObject newEntry = new JSONObject();
             newEntry.put(
                 "timestamp", 
-                ZonedDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)
+                // Precisão de milissegundos: o formato colunar do histórico guarda instantes em epoch millis
+                ZonedDateTime.now().truncatedTo(ChronoUnit.MILLIS).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)
             );
             newEntry.put("stocks", stockPrices);
 
-            // FASE 4: Gestão do histórico existente
-            JSONArray history;
-            if (Files.exists(Paths.get(HISTORY_FILE))) {
-                // Lê histórico existente preservando dados anteriores
-                String existingContent = Files.readString(Paths.get(HISTORY_FILE));
-                history = new JSONArray(existingContent);
-            } else {
-                // Cria novo histórico se arquivo não existir
-                history = new JSONArray();
-            }
-
-            // FASE 5: Atualização e persistência do histórico
-            // Adiciona novo registro ao final do array histórico
-            history.put(newEntry);
-
-            // Grava histórico atualizado com formatação legível
-            Files.writeString(
-                Paths.get(HISTORY_FILE), 
-                history.toString(2)  // Indentação de 2 espaços para legibilidade
-            );
+            // FASE 4: Persistência do registro
+            // Acrescentado ao final do segmento ativo, sem reler nem regravar o histórico existente
+            store.append(newEntry);
 
             // Feedback de sucesso com timestamp de identificação
             System.out.println(
-                "Preços das ações salvos em " + HISTORY_FILE + 
+                "Preços das ações salvos em " + TimeSeriesStore.DIR + 
                 " às " + newEntry.getString("timestamp")
             );
             
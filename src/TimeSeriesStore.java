@@ -0,0 +1,399 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class TimeSeriesStore implements Closeable {
+
+    public static final Path DIR = Paths.get(System.getProperty("agent.stocks.dir", "stocks-history"));
+
+    // Tamanho máximo de cada segmento; ao atingi-lo, o segmento é selado e um novo é aberto
+    public static final long SEGMENT_MAX_BYTES = Long.getLong("agent.stocks.segmentBytes", 1024L * 1024);
+
+    public enum Sync {
+        // force() após cada registro: nenhum registro confirmado se perde numa queda
+        ALWAYS,
+        // force() no máximo a cada agent.stocks.fsyncMillis: uma queda perde só os registros mais recentes
+        INTERVAL,
+        // Sem force(): o sistema operacional decide quando gravar (mais rápido, menos durável)
+        NEVER
+    }
+
+    public static final Sync SYNC = Sync.valueOf(System.getProperty("agent.stocks.fsync", "always").toUpperCase());
+
+    public static final long SYNC_MILLIS = Long.getLong("agent.stocks.fsyncMillis", 5000);
+
+    // Segmentos selados convertidos para o formato colunar comprimido (ColumnarSeries); false = mantidos em JSONL
+    public static final boolean COLUMNAR = Boolean.parseBoolean(System.getProperty("agent.stocks.columnar", "true"));
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+
+    private static final String COLUMNAR_SUFFIX = ".col";
+
+    private final Path dir;
+
+    private final long segmentMaxBytes;
+
+    private final Sync sync;
+
+    // Segmentos em ordem; só o último (ativo) recebe gravações
+    private final List<Integer> segments = new ArrayList<>();
+
+    // Segmentos já no formato colunar (só segmentos selados)
+    private final Set<Integer> columnar = new HashSet<>();
+
+    private FileChannel active;
+
+    private long records;
+
+    private long truncated;
+
+    private long lastSync = System.currentTimeMillis();
+
+    public TimeSeriesStore(Path dir, long segmentMaxBytes, Sync sync) throws IOException {
+        this.dir = dir;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.sync = sync;
+        Files.createDirectories(dir);
+        open();
+    }
+
+    public static TimeSeriesStore open(Path dir) throws IOException {
+        return new TimeSeriesStore(dir, SEGMENT_MAX_BYTES, SYNC);
+    }
+
+    public synchronized void append(JSONObject record) throws IOException {
+        // Um registro compacto por linha (JSONL), acrescentado ao final do segmento ativo: custo O(1) por registro
+        if (active == null) {
+            throw new IOException("Histórico fechado: " + dir);
+        }
+        ByteBuffer line = ByteBuffer.wrap((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        if (active.size() > 0 && active.size() + line.remaining() > segmentMaxBytes) {
+            rollSegment();
+        }
+        while (line.hasRemaining()) {
+            active.write(line);
+        }
+        records++;
+
+        // Política de sincronização com o disco
+        long now = System.currentTimeMillis();
+        if (sync == Sync.ALWAYS || (sync == Sync.INTERVAL && now - lastSync >= SYNC_MILLIS)) {
+            active.force(false);
+            lastSync = now;
+        }
+    }
+
+    public synchronized long size() {
+        return records;
+    }
+
+    public synchronized void scan(Consumer<JSONObject> consumer) throws IOException {
+        // Leitura sequencial de todos os segmentos, registro a registro (sem carregar o histórico inteiro)
+        for (int id : segments) {
+            if (columnar.contains(id)) {
+                ColumnarSeries.read(columnarPath(id), Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+                    for (int row = 0; row < block.size(); row++) {
+                        consumer.accept(block.record(row));
+                    }
+                });
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(segmentPath(id), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        consumer.accept(new JSONObject(line));
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void scanColumns(long from, long to, Consumer<ColumnarSeries.Block> consumer) throws IOException {
+        // Varredura por colunas (arrays primitivos) das coletas entre from e to (epoch millis)
+        // Segmentos colunares pulam blocos fora do intervalo pelo cabeçalho; o segmento ativo é convertido em memória
+        for (int id : segments) {
+            if (columnar.contains(id)) {
+                ColumnarSeries.read(columnarPath(id), from, to, consumer);
+                continue;
+            }
+            try {
+                for (ColumnarSeries.Block block : ColumnarSeries.toBlocks(readSegment(segmentPath(id)))) {
+                    if (block.getMaxTime() >= from && block.getMinTime() <= to) {
+                        consumer.accept(block);
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Segmento " + segmentPath(id) + " ignorado na varredura por colunas: " + e.getMessage());
+            }
+        }
+    }
+
+    public void exportJson(Path target) throws IOException {
+        // Exportação no formato anterior (array JSON indentado), gravada em arquivo temporário e movida de forma atômica
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write("[");
+            boolean[] first = {true};
+            IOException[] failure = {null};
+            scan(record -> {
+                try {
+                    writer.write(first[0] ? "\n  " : ",\n  ");
+                    writer.write(record.toString(2).replace("\n", "\n  "));
+                    first[0] = false;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            writer.write(first[0] ? "]" : "\n]");
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static long importJson(Path source, Path dir) throws IOException {
+        // Migração do histórico no formato anterior (array JSON) para os segmentos, de forma atômica:
+        // os registros vão para um diretório temporário, sincronizado uma vez ao final, que só então
+        // recebe o nome definitivo. Uma queda no meio deixa o destino vazio e a importação é refeita
+        JSONArray history = new JSONArray(Files.readString(source));
+
+        // O destino só é substituído se ainda não tiver registros (apenas segmentos ativos vazios)
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.size(file) > 0) {
+                        throw new IOException("Histórico " + dir + " já tem registros; importação de " + source + " cancelada");
+                    }
+                }
+            }
+        }
+
+        Path staging = dir.resolveSibling(dir.getFileName() + ".import");
+        deleteDirectory(staging);
+        try (TimeSeriesStore target = new TimeSeriesStore(staging, SEGMENT_MAX_BYTES, Sync.NEVER)) {
+            for (int i = 0; i < history.length(); i++) {
+                target.append(toMillis(history.getJSONObject(i)));
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteDirectory(staging);
+            throw e;
+        }
+        deleteDirectory(dir);
+        Files.move(staging, dir, StandardCopyOption.ATOMIC_MOVE);
+        return history.length();
+    }
+
+    public synchronized String stats() {
+        long bytes = 0;
+        for (int id : segments) {
+            try {
+                bytes += Files.size(columnar.contains(id) ? columnarPath(id) : segmentPath(id));
+            } catch (IOException e) {
+                // Segmento removido externamente: fora da contagem
+            }
+        }
+        return String.format("histórico: %d registros em %d segmentos (%d colunares, %s), %d bytes em disco, %d bytes de cauda incompleta descartados na abertura",
+            records, segments.size(), columnar.size(), dir, bytes, truncated);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.force(false);
+            active.close();
+            active = null;
+        }
+    }
+
+    private void open() throws IOException {
+        // FASE 1: Descoberta dos segmentos existentes (JSONL ou colunares)
+        Set<Integer> ids = new TreeSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.startsWith(SEGMENT_PREFIX) && (n.endsWith(SEGMENT_SUFFIX) || n.endsWith(COLUMNAR_SUFFIX)))
+                .forEach(n -> ids.add(Integer.parseInt(n.substring(SEGMENT_PREFIX.length(), n.lastIndexOf('.')))));
+        }
+        segments.addAll(ids);
+
+        // FASE 2: Contagem dos registros; só o último segmento pode ter cauda incompleta (queda durante a gravação)
+        for (int i = 0; i < segments.size(); i++) {
+            int id = segments.get(i);
+            Path path = segmentPath(id);
+            if (Files.exists(columnarPath(id))) {
+                // Conversão concluída: o JSONL que sobrou de uma queda antes da remoção é descartado
+                Files.deleteIfExists(path);
+                columnar.add(id);
+                records += ColumnarSeries.count(columnarPath(id));
+            } else if (i < segments.size() - 1) {
+                try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+                    records += lines.filter(line -> !line.isBlank()).count();
+                }
+                if (COLUMNAR) {
+                    // Segmento selado ainda em JSONL (conversão interrompida ou desativada antes)
+                    compact(id);
+                }
+            } else {
+                recover(path);
+            }
+        }
+
+        // FASE 3: Abre (ou cria) o segmento ativo para novas gravações
+        if (segments.isEmpty() || columnar.contains(segments.get(segments.size() - 1))) {
+            segments.add(segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1);
+        }
+        active = openForAppend(segments.get(segments.size() - 1));
+    }
+
+    private void recover(Path path) throws IOException {
+        // Mantém só as linhas completas e válidas; a partir da primeira inválida, o restante é truncado
+        byte[] bytes = Files.readAllBytes(path);
+        int valid = 0;
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+            if (!line.isBlank()) {
+                try {
+                    new JSONObject(line);
+                } catch (Exception e) {
+                    break;
+                }
+                records++;
+            }
+            start = i + 1;
+            valid = start;
+        }
+        if (valid < bytes.length) {
+            truncated = bytes.length - valid;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+            System.err.println("Histórico " + path + ": " + truncated + " bytes de registro incompleto descartados.");
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        // Sela o segmento atual (sincronizado no disco) e inicia o próximo
+        active.force(false);
+        active.close();
+        int sealed = segments.get(segments.size() - 1);
+        segments.add(sealed + 1);
+        active = openForAppend(sealed + 1);
+        if (COLUMNAR) {
+            compact(sealed);
+        }
+    }
+
+    private void compact(int id) {
+        // Converte um segmento selado para o formato colunar; em qualquer falha o JSONL é mantido
+        Path source = segmentPath(id);
+        Path tmp = dir.resolve(source.getFileName() + ".tmp");
+        try {
+            List<JSONObject> original = readSegment(source);
+            ColumnarSeries.write(tmp, ColumnarSeries.toBlocks(original));
+
+            // Verificação: o arquivo colunar precisa reproduzir exatamente os registros originais
+            List<JSONObject> decoded = new ArrayList<>();
+            ColumnarSeries.read(tmp, Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+                for (int row = 0; row < block.size(); row++) {
+                    decoded.add(block.record(row));
+                }
+            });
+            for (int i = 0; i < original.size(); i++) {
+                if (i >= decoded.size() || !original.get(i).similar(decoded.get(i))) {
+                    throw new IllegalArgumentException("registro " + (i + 1) + " não é reproduzido pelo formato colunar");
+                }
+            }
+
+            // Colunar sincronizado e movido de forma atômica antes de remover o JSONL
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, columnarPath(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+            columnar.add(id);
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Arquivo temporário é recriado na próxima tentativa
+            }
+            System.err.println("Segmento " + source + " mantido em JSONL: " + e.getMessage());
+        }
+    }
+
+    private static JSONObject toMillis(JSONObject record) {
+        // O formato anterior gravava instantes com nanossegundos; o colunar guarda epoch millis e só converte
+        // segmentos que reproduz exatamente, então o instante importado é truncado para milissegundos
+        String timestamp = record.optString("timestamp", null);
+        if (timestamp != null) {
+            OffsetDateTime instant = OffsetDateTime.parse(timestamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            record.put("timestamp", instant.truncatedTo(ChronoUnit.MILLIS).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        }
+        return record;
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        // Diretório de segmentos sem subpastas: remove os arquivos e depois o próprio diretório
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(path);
+    }
+
+    private static List<JSONObject> readSegment(Path path) throws IOException {
+        List<JSONObject> records = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                records.add(new JSONObject(line));
+            }
+        }
+        return records;
+    }
+
+    private FileChannel openForAppend(int id) throws IOException {
+        return FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(int id) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Path columnarPath(int id) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, COLUMNAR_SUFFIX));
+    }
+}
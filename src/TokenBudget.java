@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBudget {
+
+    // Limite padrão de tokens de um prompt (janela de contexto); acima dele a chamada nem é enviada
+    public static final long MAX_PROMPT_TOKENS = Long.getLong("gemini.tokens.maxPrompt", 1_000_000);
+
+    // Orçamento de tokens por execução dos agentes (0 = sem limite)
+    public static final long RUN_TOKENS = Long.getLong("agent.tokenBudget", 0);
+
+    // Perto do limite, confirma a estimativa local com o endpoint countTokens antes de decidir
+    public static final boolean PREFLIGHT = Boolean.parseBoolean(System.getProperty("gemini.tokens.preflight", "true"));
+
+    // Faixa (fração do limite) a partir da qual a contagem exata é consultada
+    private static final double PREFLIGHT_MARGIN = 0.9;
+
+    public enum Overflow {
+        // Corta o prompt no limite
+        TRUNCATE,
+        // Divide o prompt em partes dentro do limite e envia cada uma
+        CHUNK,
+        // Não envia: falha com ExceededException
+        REFUSE
+    }
+
+    public static class ExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+
+    private final long limit;
+
+    private final AtomicLong used = new AtomicLong();
+
+    private final AtomicLong refused = new AtomicLong();
+
+    public TokenBudget(String name, long limit) {
+        // Orçamento de uma execução inteira de agente (prompt reservado antes do envio, total real depois)
+        this.name = name;
+        this.limit = limit;
+    }
+
+    public static TokenBudget forRun(String name) {
+        // Orçamento da execução configurado em agent.tokenBudget, ou null sem limite
+        return RUN_TOKENS > 0 ? new TokenBudget(name, RUN_TOKENS) : null;
+    }
+
+    public boolean reserve(long tokens) {
+        // Reserva os tokens estimados do prompt; falha se a execução já passaria do limite
+        while (true) {
+            long current = used.get();
+            if (current + tokens > limit) {
+                refused.incrementAndGet();
+                return false;
+            }
+            if (used.compareAndSet(current, current + tokens)) {
+                return true;
+            }
+        }
+    }
+
+    public void settle(long reserved, long actual) {
+        // Troca a reserva pelo total real informado pela API (prompt + resposta); 0 = chamada falhou
+        used.addAndGet(actual - reserved);
+    }
+
+    public boolean isExhausted() {
+        return used.get() >= limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public long getRemaining() {
+        return Math.max(0, limit - used.get());
+    }
+
+    public String stats() {
+        return String.format("orçamento %s: %d de %d tokens usados, %d chamadas recusadas", name, used.get(), limit, refused.get());
+    }
+
+    public static CompletableFuture<List<String>> enforce(String model, String prompt, long maxTokens, Overflow overflow) {
+        // Orçamento por requisição: devolve o(s) prompt(s) a enviar, já dentro do limite
+        long estimated = TokenEstimator.estimate(model, prompt);
+        if (estimated <= maxTokens * PREFLIGHT_MARGIN) {
+            return CompletableFuture.completedFuture(List.of(prompt));
+        }
+        if (!PREFLIGHT) {
+            return CompletableFuture.completedFuture(apply(model, prompt, estimated, maxTokens, overflow));
+        }
+
+        // Estimativa perto ou acima do limite: a contagem exata evita recusar (ou cortar) à toa
+        // Sem contagem (falha no countTokens), decide pela estimativa, que não entra na calibração:
+        // tratá-la como contagem real puxaria o fator de calibração para ele mesmo
+        return GeminiClient.getDefault().countTokensAsync(model, prompt)
+            .handle((actual, error) -> {
+                if (error != null) {
+                    return apply(model, prompt, estimated, maxTokens, overflow);
+                }
+                TokenEstimator.observe(model, TokenEstimator.estimate(prompt), actual);
+                return apply(model, prompt, actual, maxTokens, overflow);
+            });
+    }
+
+    private static List<String> apply(String model, String prompt, long tokens, long maxTokens, Overflow overflow) {
+        if (tokens <= maxTokens) {
+            return List.of(prompt);
+        }
+        switch (overflow) {
+            case TRUNCATE:
+                return List.of(TokenEstimator.truncate(model, prompt, maxTokens));
+            case CHUNK:
+                return split(model, prompt, maxTokens);
+            default:
+                throw new CompletionException(new ExceededException(
+                    String.format("Prompt com ~%d tokens excede o limite de %d tokens", tokens, maxTokens)));
+        }
+    }
+
+    private static List<String> split(String model, String prompt, long maxTokens) {
+        // Partes consecutivas, cada uma terminando na última quebra de linha dentro do limite
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (start < prompt.length()) {
+            int end = start + TokenEstimator.fit(model, prompt.substring(start), maxTokens);
+            parts.add(prompt.substring(start, end));
+            start = end;
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+public class TokenEstimator {
+
+    // Consulta o endpoint countTokens para calibrar a estimativa no primeiro prompt de cada modelo
+    public static final boolean CALIBRATE = Boolean.parseBoolean(System.getProperty("gemini.tokens.calibrate", "false"));
+
+    // Peso de cada nova observação na média móvel do fator de calibração
+    private static final double ALPHA = 0.2;
+
+    // modelo -> fator (tokens reais / tokens estimados)
+    private static final Map<String, Double> ratios = new ConcurrentHashMap<>();
+
+    private static final Map<String, Boolean> calibrating = new ConcurrentHashMap<>();
+
+    public static long estimate(String text) {
+        // Estimativa local em uma passada, sem alocação: sequências alfanuméricas ASCII rendem ~1 token
+        // a cada 4 caracteres, pontuação e símbolos 1 token cada, e letras fora do ASCII
+        // (acentos, CJK) ~1 token a cada 2 caracteres; espaços não contam
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        long tokens = 0;
+        int run = 0;
+        int wide = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            tokens += (run + 3) / 4;
+            run = 0;
+            if (c >= 128 && Character.isLetterOrDigit(c)) {
+                wide++;
+            } else if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        tokens += (run + 3) / 4 + (wide + 1) / 2;
+        return tokens;
+    }
+
+    public static long estimate(String model, String text) {
+        // Estimativa local corrigida pelo fator observado para o modelo
+        long base = estimate(text);
+        if (CALIBRATE && model != null && base > 0 && calibrating.putIfAbsent(model, Boolean.TRUE) == null) {
+            // Calibração ativa em segundo plano: não atrasa a chamada atual
+            calibrate(model, text);
+        }
+        return Math.round(base * ratios.getOrDefault(model, 1.0));
+    }
+
+    public static void observe(String model, long estimatedTokens, long actualTokens) {
+        // Calibração passiva: compara a estimativa com o promptTokenCount devolvido pela API
+        if (estimatedTokens <= 0 || actualTokens <= 0) {
+            return;
+        }
+        double sample = (double) actualTokens / estimatedTokens;
+        ratios.merge(model, sample, (current, next) -> current * (1 - ALPHA) + next * ALPHA);
+    }
+
+    public static void observe(String model, String prompt, JSONObject responseJson) {
+        JSONObject usage = responseJson == null ? null : responseJson.optJSONObject("usageMetadata");
+        if (usage != null) {
+            observe(model, estimate(prompt), usage.optLong("promptTokenCount", 0));
+        }
+    }
+
+    public static double getRatio(String model) {
+        return ratios.getOrDefault(model, 1.0);
+    }
+
+    public static String truncate(String model, String text, long maxTokens) {
+        int cut = fit(model, text, maxTokens);
+        if (cut == text.length()) {
+            return text;
+        }
+        return text.substring(0, cut) + "\n[... conteúdo truncado pelo orçamento de tokens]";
+    }
+
+    public static int fit(String model, String text, long maxTokens) {
+        // Maior prefixo dentro do orçamento (busca binária sobre o tamanho), preferindo terminar em quebra de linha
+        if (estimate(model, text) <= maxTokens) {
+            return text.length();
+        }
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (estimate(model, text.substring(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int newline = text.lastIndexOf('\n', low - 1);
+        return newline > low / 2 ? newline + 1 : Math.max(1, low);
+    }
+
+    private static void calibrate(String model, String text) {
+        GeminiClient.getDefault().countTokensAsync(model, text).whenComplete((actual, error) -> {
+            if (error == null) {
+                // A contagem exata substitui o fator padrão de imediato
+                ratios.merge(model, (double) actual / Math.max(1, estimate(text)), (current, next) -> next);
+            } else {
+                calibrating.remove(model);
+            }
+        });
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+public class TraceRecorder {
+
+    // Desativado por padrão: nenhum custo no caminho crítico em produção
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("gemini.trace", "false"));
+
+    public static final Path TRACE_DIR = Paths.get(System.getProperty("gemini.trace.dir", ".gemini-trace"));
+
+    // Fração das trocas registradas (1.0 = todas)
+    public static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("gemini.trace.sample", "1.0"));
+
+    public static final int QUEUE_CAPACITY = Integer.getInteger("gemini.trace.queue", 1024);
+
+    // Tamanho (não comprimido) a partir do qual o journal é rotacionado
+    public static final long ROLL_BYTES = Long.getLong("gemini.trace.rollBytes", 64L * 1024 * 1024);
+
+    private static TraceRecorder defaultRecorder;
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writerThread;
+
+    private volatile boolean closing;
+
+    private Writer writer;
+
+    private long writtenBytes;
+
+    private int part;
+
+    private TraceRecorder() {
+        // Thread de gravação em segundo plano: a thread da requisição apenas enfileira
+        writerThread = new Thread(this::writeLoop, "gemini-trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public static void record(String kind, String model, String requestPayload, int status, String responseBody) {
+        // Verificações baratas antes de qualquer alocação
+        if (!ENABLED || (SAMPLE_RATE < 1.0 && ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE)) {
+            return;
+        }
+        getDefault().enqueue(kind, model, requestPayload, status, responseBody);
+    }
+
+    public static synchronized TraceRecorder getDefault() {
+        if (defaultRecorder == null) {
+            defaultRecorder = new TraceRecorder();
+        }
+        return defaultRecorder;
+    }
+
+    public String stats() {
+        return String.format("trace: %d trocas registradas, %d descartadas por fila cheia", recorded.get(), dropped.get());
+    }
+
+    private void enqueue(String kind, String model, String requestPayload, int status, String responseBody) {
+        // Requisição e resposta já são texto JSON: entram na linha sem novo parse/serialização
+        StringBuilder line = new StringBuilder(64 + length(requestPayload) + length(responseBody));
+        line.append("{\"ts\":").append(JSONObject.quote(Instant.now().toString()))
+            .append(",\"kind\":").append(JSONObject.quote(kind))
+            .append(",\"model\":").append(JSONObject.quote(model))
+            .append(",\"status\":").append(status)
+            .append(",\"request\":").append(asJson(requestPayload))
+            .append(",\"response\":").append(asJson(responseBody))
+            .append("}\n");
+
+        // Política de descarte: com a fila cheia a troca é perdida, nunca bloqueia a chamada
+        if (closing || !queue.offer(line.toString())) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closing || !queue.isEmpty()) {
+                String line = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    flush();
+                    continue;
+                }
+                write(line);
+                recorded.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Falha ao gravar trace: " + e.getMessage());
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        // Journal JSONL comprimido e rotativo: trace-<data>-<parte>.jsonl.gz
+        if (writer == null || writtenBytes >= ROLL_BYTES) {
+            closeWriter();
+            Files.createDirectories(TRACE_DIR);
+            String name = String.format("trace-%s-%03d.jsonl.gz",
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")), ++part);
+            writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(TRACE_DIR.resolve(name)), 64 * 1024, true), StandardCharsets.UTF_8));
+            writtenBytes = 0;
+        }
+        writer.write(line);
+        writtenBytes += line.length();
+    }
+
+    private void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Falha ao fechar trace: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private void close() {
+        // Encerra aceitando nada novo e drenando o que já estava na fila
+        closing = true;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int length(String text) {
+        return text == null ? 4 : text.length();
+    }
+
+    private static String asJson(String text) {
+        if (text == null) {
+            return "null";
+        }
+        String trimmed = text.trim();
+        if ((trimmed.startsWith("{") || trimmed.startsWith("[")) && isJson(trimmed)) {
+            // Quebras de linha fora de strings são só formatação (dentro de strings o JSON usa \n escapado)
+            return trimmed.replace('\n', ' ').replace('\r', ' ');
+        }
+        // Corpo que não é JSON válido (ex.: resposta truncada ou página de erro de proxy) vai como string,
+        // senão uma linha inválida quebraria a leitura do arquivo de trace inteiro
+        return JSONObject.quote(text);
+    }
+
+    private static boolean isJson(String text) {
+        try {
+            JSONTokener tokener = new JSONTokener(text);
+            tokener.nextValue();
+            return tokener.nextClean() == 0;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+public class ColumnarSeriesTest {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("columnar-test");
+        try {
+            fixedPointRoundTrip(dir);
+            xorRoundTrip(dir);
+            mixedAndEdgeValues(dir);
+            legacyBlocks(dir);
+            rangeSkipsBlocks(dir);
+        } finally {
+            deleteDirectory(dir);
+        }
+        if (failures > 0) {
+            System.err.println("ColumnarSeriesTest: " + failures + " verificação(ões) falharam.");
+            System.exit(1);
+        }
+        System.out.println("ColumnarSeriesTest: OK");
+    }
+
+    private static void fixedPointRoundTrip(Path dir) throws IOException {
+        // Preços com duas casas (caminho em ponto fixo), instantes irregulares, tickers ausentes,
+        // troca de fuso no meio da série e mais linhas que um bloco
+        Random random = new Random(42);
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime time = OffsetDateTime.parse("2025-01-02T10:00:00-03:00");
+        double petr = 38.45;
+        double vale = 61.20;
+        for (int i = 0; i < 2500; i++) {
+            time = time.plusSeconds(60 + random.nextInt(5)).plusNanos(random.nextInt(1000) * 1_000_000L);
+            if (i == 1800) {
+                time = time.withOffsetSameInstant(ZoneOffset.ofHours(-2));
+            }
+            petr = Math.round((petr + (random.nextInt(21) - 10) / 100.0) * 100) / 100.0;
+            vale = Math.round((vale + (random.nextInt(41) - 20) / 100.0) * 100) / 100.0;
+            JSONObject stocks = new JSONObject().put("PETR4", petr);
+            if (i % 7 != 0) {
+                stocks.put("VALE3", vale);
+            }
+            if (i % 500 == 0) {
+                stocks.put("ITUB4", -1.5 + i);
+            }
+            records.add(record(time, stocks));
+        }
+        check(sameRecords(records, roundTrip(dir.resolve("fixed.col"), records)), "ponto fixo: registros reproduzidos");
+        check(ColumnarSeries.count(dir.resolve("fixed.col")) == records.size(), "ponto fixo: contagem pelos cabeçalhos");
+        check(scaleOf(Files.readAllBytes(dir.resolve("fixed.col")), "PETR4") == 2, "ponto fixo: PETR4 gravado com escala 2");
+    }
+
+    private static void xorRoundTrip(Path dir) throws IOException {
+        // Valores sem representação decimal curta: as colunas caem no XOR do double
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime time = OffsetDateTime.parse("2025-01-02T10:00:00Z");
+        for (int i = 0; i < 1500; i++) {
+            time = time.plusSeconds(30);
+            records.add(record(time, new JSONObject()
+                .put("PI", Math.PI * i)
+                .put("NEG", -Math.E / (i + 1))
+                .put("BIG", 1e300 / (i + 3))
+                .put("CONST", Math.sqrt(2))));
+        }
+        check(sameRecords(records, roundTrip(dir.resolve("xor.col"), records)), "XOR: registros reproduzidos");
+        check(scaleOf(Files.readAllBytes(dir.resolve("xor.col")), "PI") == -1, "XOR: PI gravado sem escala");
+    }
+
+    private static void mixedAndEdgeValues(Path dir) throws IOException {
+        // Somas com erro de arredondamento, mais casas que a escala máxima, zero negativo e valores extremos
+        double[] values = {0.1 + 0.2, 1e-10, 123456789.123456789, -0.0, 0.0, Double.MIN_VALUE, Double.MAX_VALUE,
+            -Double.MAX_VALUE, 1.000000001, 99.99, 1e15, 0.5, 17};
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime time = OffsetDateTime.parse("2025-03-01T09:00:00+01:00");
+        for (int i = 0; i < values.length; i++) {
+            time = time.plusMinutes(1);
+            records.add(record(time, new JSONObject().put("EDGE", values[i]).put("STEP", i * 0.25)));
+        }
+        List<JSONObject> decoded = roundTrip(dir.resolve("edge.col"), records);
+        check(sameRecords(records, decoded), "extremos: registros reproduzidos");
+        for (int i = 0; i < values.length && i < decoded.size(); i++) {
+            double back = decoded.get(i).getJSONObject("stocks").getDouble("EDGE");
+            check(Double.doubleToRawLongBits(back) == Double.doubleToRawLongBits(values[i]) || (values[i] == 0 && back == 0),
+                "extremos: bits de " + values[i]);
+        }
+    }
+
+    private static void legacyBlocks(Path dir) throws IOException {
+        // Arquivos TSC1 (sem o byte de escala por coluna) continuam legíveis como XOR
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime time = OffsetDateTime.parse("2025-01-02T10:00:00-03:00");
+        for (int i = 0; i < 300; i++) {
+            time = time.plusSeconds(10);
+            records.add(record(time, new JSONObject().put("A", Math.PI * i).put("B", Math.log(i + 2))));
+        }
+        Path current = dir.resolve("v2.col");
+        ColumnarSeries.write(current, ColumnarSeries.toBlocks(records));
+        Path legacy = dir.resolve("v1.col");
+        Files.write(legacy, toLegacy(Files.readAllBytes(current)));
+        check(sameRecords(records, readAll(legacy)), "TSC1: registros reproduzidos");
+    }
+
+    private static void rangeSkipsBlocks(Path dir) throws IOException {
+        // Leitura por intervalo entrega só os blocos que o cruzam
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime time = OffsetDateTime.parse("2025-01-02T10:00:00Z");
+        for (int i = 0; i < ColumnarSeries.BLOCK_ROWS * 3; i++) {
+            time = time.plusSeconds(1);
+            records.add(record(time, new JSONObject().put("A", 10 + i / 100.0)));
+        }
+        Path file = dir.resolve("range.col");
+        ColumnarSeries.write(file, ColumnarSeries.toBlocks(records));
+        long from = millis(records.get(ColumnarSeries.BLOCK_ROWS + 10));
+        long to = millis(records.get(ColumnarSeries.BLOCK_ROWS + 20));
+        List<ColumnarSeries.Block> blocks = new ArrayList<>();
+        ColumnarSeries.read(file, from, to, blocks::add);
+        check(blocks.size() == 1 && blocks.get(0).getMinTime() <= from && blocks.get(0).getMaxTime() >= to,
+            "intervalo: só o bloco do meio é decodificado");
+    }
+
+    private static byte[] toLegacy(byte[] current) {
+        // Regrava cada bloco com o magic TSC1 e sem o byte de escala (todas as colunas devem estar em XOR)
+        ByteBuffer in = ByteBuffer.wrap(current);
+        ByteBuffer out = ByteBuffer.allocate(current.length);
+        while (in.hasRemaining()) {
+            in.getInt();
+            out.putInt(0x54534331);
+            int rows = in.getInt();
+            long minTime = in.getLong();
+            long maxTime = in.getLong();
+            int offset = in.getInt();
+            int columns = in.getInt();
+            int timeBytes = in.getInt();
+            out.putInt(rows).putLong(minTime).putLong(maxTime).putInt(offset).putInt(columns).putInt(timeBytes);
+            int dataBytes = timeBytes;
+            for (int column = 0; column < columns; column++) {
+                short length = in.getShort();
+                byte[] name = new byte[length];
+                in.get(name);
+                byte scale = in.get();
+                check(scale < 0, "TSC1: coluna de teste gravada em XOR");
+                double min = in.getDouble();
+                double max = in.getDouble();
+                int bytes = in.getInt();
+                out.putShort(length).put(name).putDouble(min).putDouble(max).putInt(bytes);
+                dataBytes += bytes;
+            }
+            byte[] data = new byte[dataBytes];
+            in.get(data);
+            out.put(data);
+        }
+        byte[] legacy = new byte[out.position()];
+        out.flip().get(legacy);
+        return legacy;
+    }
+
+    private static int scaleOf(byte[] file, String ticker) {
+        // Escala da coluna do ticker no primeiro bloco, lida do cabeçalho ([ticker][escala][mín][máx][bytes])
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        buffer.position(28);
+        int columns = buffer.getInt();
+        buffer.getInt();
+        for (int column = 0; column < columns; column++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            int scale = buffer.get();
+            if (new String(name, StandardCharsets.UTF_8).equals(ticker)) {
+                return scale;
+            }
+            buffer.position(buffer.position() + 8 + 8 + 4);
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private static List<JSONObject> roundTrip(Path file, List<JSONObject> records) throws IOException {
+        ColumnarSeries.write(file, ColumnarSeries.toBlocks(records));
+        return readAll(file);
+    }
+
+    private static List<JSONObject> readAll(Path file) throws IOException {
+        List<JSONObject> decoded = new ArrayList<>();
+        ColumnarSeries.read(file, Long.MIN_VALUE, Long.MAX_VALUE, block -> {
+            for (int row = 0; row < block.size(); row++) {
+                decoded.add(block.record(row));
+            }
+        });
+        return decoded;
+    }
+
+    private static boolean sameRecords(List<JSONObject> expected, List<JSONObject> actual) {
+        if (expected.size() != actual.size()) {
+            System.err.println("  esperados " + expected.size() + " registros, lidos " + actual.size());
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).similar(actual.get(i))) {
+                System.err.println("  registro " + (i + 1) + ": esperado " + expected.get(i) + ", lido " + actual.get(i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JSONObject record(OffsetDateTime time, JSONObject stocks) {
+        return new JSONObject().put("timestamp", time.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).put("stocks", stocks);
+    }
+
+    private static long millis(JSONObject record) {
+        return OffsetDateTime.parse(record.getString("timestamp"), DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            System.err.println("FALHOU: " + message);
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
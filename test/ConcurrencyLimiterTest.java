@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        slotAccounting(new ConcurrencyLimiter());
+        cancelledWaiter(new ConcurrencyLimiter());
+        overloadBackoff(new ConcurrencyLimiter());
+
+        if (failures > 0) {
+            System.err.println("ConcurrencyLimiterTest: " + failures + " verificação(ões) falharam.");
+            System.exit(1);
+        }
+        System.out.println("ConcurrencyLimiterTest: OK");
+    }
+
+    private static void slotAccounting(ConcurrencyLimiter limiter) throws Exception {
+        // Até o limite inicial as vagas saem na hora; além dele, as chamadas esperam na fila
+        int limit = ConcurrencyLimiter.INITIAL_LIMIT;
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            CompletableFuture<ConcurrencyLimiter.Permit> slot = limiter.acquire("modelo");
+            check(slot.isDone(), "vagas: chamada " + (i + 1) + " dentro do limite");
+            permits.add(slot.get());
+        }
+        CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquire("modelo");
+        check(!queued.isDone() && limiter.getInFlight("modelo") == limit && limiter.getQueueDepth("modelo") == 1,
+            "vagas: chamada além do limite enfileirada");
+
+        // Devolver uma vaga sem amostra passa a vaga para a fila, sem mexer no limite
+        permits.remove(0).ignore();
+        check(queued.isDone(), "vagas: fila atendida ao devolver uma vaga");
+        check(limiter.getInFlight("modelo") == limit && limiter.getQueueDepth("modelo") == 0, "vagas: em andamento após repassar a vaga");
+        check(limiter.getLimit("modelo") == limit, "vagas: devolução sem amostra não altera o limite");
+        permits.add(queued.get());
+
+        // Devolver a mesma vaga duas vezes conta só uma
+        ConcurrencyLimiter.Permit twice = permits.remove(0);
+        twice.ignore();
+        twice.ignore();
+        twice.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        check(limiter.getInFlight("modelo") == limit - 1, "vagas: devolução repetida não libera vaga extra");
+        check(limiter.getLimit("modelo") == limit, "vagas: devolução repetida não conta como sobrecarga");
+
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.ignore();
+        }
+        check(limiter.getInFlight("modelo") == 0, "vagas: nenhuma em andamento ao final");
+
+        // Modelos diferentes têm limites independentes
+        check(limiter.getInFlight("outro-modelo") == 0 && limiter.acquire("outro-modelo").isDone(), "vagas: outro modelo não espera");
+    }
+
+    private static void cancelledWaiter(ConcurrencyLimiter limiter) throws Exception {
+        // Uma espera cancelada não fica com a vaga: a seguinte na fila recebe a vaga devolvida
+        int limit = ConcurrencyLimiter.INITIAL_LIMIT;
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            permits.add(limiter.acquire("modelo").get());
+        }
+        CompletableFuture<ConcurrencyLimiter.Permit> cancelled = limiter.acquire("modelo");
+        CompletableFuture<ConcurrencyLimiter.Permit> waiting = limiter.acquire("modelo");
+        cancelled.cancel(false);
+        permits.remove(0).ignore();
+        check(waiting.isDone(), "cancelamento: a espera seguinte recebe a vaga");
+        check(limiter.getInFlight("modelo") == limit && limiter.getQueueDepth("modelo") == 0, "cancelamento: vaga não presa na espera cancelada");
+        permits.add(waiting.get());
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.ignore();
+        }
+        check(limiter.getInFlight("modelo") == 0, "cancelamento: nenhuma em andamento ao final");
+    }
+
+    private static void overloadBackoff(ConcurrencyLimiter limiter) throws Exception {
+        // Sobrecarga (429/503/timeout) reduz o limite; as vagas acima do novo limite só voltam quando devolvidas
+        int limit = ConcurrencyLimiter.INITIAL_LIMIT;
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            permits.add(limiter.acquire("modelo").get());
+        }
+        permits.remove(0).release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        int reduced = limiter.getLimit("modelo");
+        check(reduced == Math.max(ConcurrencyLimiter.MIN_LIMIT, (int) (limit * ConcurrencyLimiter.BACKOFF_RATIO)),
+            "sobrecarga: limite reduzido de " + limit + " para " + reduced);
+
+        CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquire("modelo");
+        check(!queued.isDone(), "sobrecarga: em andamento acima do novo limite enfileira novas chamadas");
+        int released = 0;
+        while (!queued.isDone() && !permits.isEmpty()) {
+            permits.remove(0).ignore();
+            released++;
+        }
+        check(queued.isDone() && released == limit - reduced, "sobrecarga: fila atendida só quando as vagas ficam abaixo do novo limite");
+        permits.add(queued.get());
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.ignore();
+        }
+        check(limiter.getInFlight("modelo") == 0 && limiter.getQueueDepth("modelo") == 0, "sobrecarga: nenhuma em andamento ao final");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            System.err.println("FALHOU: " + message);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        // Cotas por modelo (gemini.rateLimit.rpm.<modelo> e .tpm.<modelo>) lidas na criação do bucket
+        System.setProperty("gemini.rateLimit.rpm.teste-rpm", "60");
+        System.setProperty("gemini.rateLimit.tpm.teste-tpm", "6000");
+        System.setProperty("gemini.rateLimit.rpm.teste-fila", "60");
+        System.setProperty("gemini.rateLimit.rpm.teste-cancela", "60");
+
+        RateLimiter limiter = new RateLimiter();
+        requestQuota(limiter);
+        tokenQuota(limiter);
+        fifoOrder(limiter);
+        cancelledWaiter(limiter);
+        penalty(limiter);
+
+        if (failures > 0) {
+            System.err.println("RateLimiterTest: " + failures + " verificação(ões) falharam.");
+            System.exit(1);
+        }
+        System.out.println("RateLimiterTest: OK");
+    }
+
+    private static void requestQuota(RateLimiter limiter) throws Exception {
+        // 60 por minuto: o bucket cheio libera 60 chamadas na hora e a próxima espera ~1 s pela reposição
+        for (int i = 0; i < 60; i++) {
+            check(limiter.acquire("teste-rpm", "chave", 1).isDone(), "requisições: chamada " + (i + 1) + " dentro da cota");
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> next = limiter.acquire("teste-rpm", "chave", 1);
+        check(!next.isDone() && limiter.getQueued("teste-rpm", "chave") == 1, "requisições: chamada além da cota enfileirada");
+        next.get(5, TimeUnit.SECONDS);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(waited >= 900, "requisições: liberada após a reposição (" + waited + " ms)");
+        check(limiter.getQueued("teste-rpm", "chave") == 0, "requisições: fila vazia após a liberação");
+
+        // Chaves diferentes têm buckets independentes
+        check(limiter.acquire("teste-rpm", "outra-chave", 1).isDone(), "requisições: outra chave não espera");
+    }
+
+    private static void tokenQuota(RateLimiter limiter) throws Exception {
+        // 6000 tokens por minuto (100/s): uma chamada maior que a cota consome o bucket cheio em vez de travar
+        check(limiter.acquire("teste-tpm", "chave", 60_000).isDone(), "tokens: chamada maior que a cota não espera para sempre");
+        long start = System.nanoTime();
+        CompletableFuture<Void> next = limiter.acquire("teste-tpm", "chave", 100);
+        check(!next.isDone(), "tokens: bucket vazio enfileira a próxima chamada");
+        next.get(5, TimeUnit.SECONDS);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(waited >= 900, "tokens: liberada após repor 100 tokens (" + waited + " ms)");
+    }
+
+    private static void fifoOrder(RateLimiter limiter) throws Exception {
+        // Com fila, uma chamada nova não fura a fila mesmo que houvesse cota para ela
+        for (int i = 0; i < 60; i++) {
+            limiter.acquire("teste-fila", "chave", 1);
+        }
+        CompletableFuture<Void> first = limiter.acquire("teste-fila", "chave", 1);
+        CompletableFuture<Void> second = limiter.acquire("teste-fila", "chave", 1);
+        first.get(5, TimeUnit.SECONDS);
+        check(!second.isDone(), "fila: a segunda espera a própria reposição");
+        second.get(5, TimeUnit.SECONDS);
+        check(limiter.getQueued("teste-fila", "chave") == 0, "fila: vazia após liberar as duas");
+    }
+
+    private static void cancelledWaiter(RateLimiter limiter) throws Exception {
+        // Uma espera cancelada sai da fila sem consumir cota: a seguinte é liberada na primeira reposição
+        for (int i = 0; i < 60; i++) {
+            limiter.acquire("teste-cancela", "chave", 1);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> cancelled = limiter.acquire("teste-cancela", "chave", 1);
+        CompletableFuture<Void> waiting = limiter.acquire("teste-cancela", "chave", 1);
+        cancelled.cancel(false);
+        waiting.get(5, TimeUnit.SECONDS);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(waited < 1800, "cancelamento: liberada sem esperar pela cota da cancelada (" + waited + " ms)");
+    }
+
+    private static void penalty(RateLimiter limiter) throws Exception {
+        // Após um 429, nenhuma chamada é liberada antes da pausa indicada, mesmo com cota disponível
+        limiter.penalize("teste-pausa", "chave", 500);
+        long start = System.nanoTime();
+        CompletableFuture<Void> next = limiter.acquire("teste-pausa", "chave", 1);
+        check(!next.isDone(), "pausa: chamada enfileirada durante a pausa");
+        next.get(5, TimeUnit.SECONDS);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(waited >= 450, "pausa: liberada só após a pausa (" + waited + " ms)");
+
+        // Uma pausa menor depois não encurta a que já está em vigor
+        limiter.penalize("teste-pausa", "chave", 400);
+        limiter.penalize("teste-pausa", "chave", 10);
+        start = System.nanoTime();
+        limiter.acquire("teste-pausa", "chave", 1).get(5, TimeUnit.SECONDS);
+        waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        check(waited >= 350, "pausa: a pausa mais longa prevalece (" + waited + " ms)");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            System.err.println("FALHOU: " + message);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class ResponseCacheTest {
+
+    private static final long MEMORY = 1024 * 1024;
+
+    private static final long SEGMENT = 4096;
+
+    private static final long DISK = 64 * 1024 * 1024;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("cache-test");
+        try {
+            Map<String, String> entries = entries(200);
+            reopen(dir.resolve("cache"), entries);
+            tornIndex(dir.resolve("cache"), entries);
+            tornTail(dir.resolve("cache"), entries);
+            corruptedValue(dir.resolve("cache"), entries);
+            expiredSegments(dir.resolve("expired"));
+        } finally {
+            deleteDirectory(dir);
+        }
+        if (failures > 0) {
+            System.err.println("ResponseCacheTest: " + failures + " verificação(ões) falharam.");
+            System.exit(1);
+        }
+        System.out.println("ResponseCacheTest: OK");
+    }
+
+    private static void reopen(Path dir, Map<String, String> entries) throws IOException {
+        // Segmentos pequenos: os selados ganham .idx e o ativo é varrido na próxima abertura
+        ResponseCache cache = new ResponseCache(dir, MEMORY, SEGMENT, DISK);
+        entries.forEach((key, value) -> cache.put(key, value, Duration.ofHours(1)));
+        cache.close();
+        check(files(dir, ".idx").size() > 1, "reabertura: segmentos selados com .idx");
+        checkAll(dir, entries, "reabertura");
+    }
+
+    private static void tornIndex(Path dir, Map<String, String> entries) throws IOException {
+        // .idx cortado ao meio (queda durante writeIndex) ou ausente: o segmento é varrido de novo
+        List<Path> indexes = files(dir, ".idx");
+        Path torn = indexes.get(0);
+        byte[] bytes = Files.readAllBytes(torn);
+        Files.write(torn, Arrays.copyOf(bytes, bytes.length / 2 + 3));
+        Files.delete(indexes.get(1));
+        checkAll(dir, entries, ".idx rasgado");
+    }
+
+    private static void tornTail(Path dir, Map<String, String> entries) throws IOException {
+        // Registro incompleto no fim do segmento ativo: descartado, e o próximo registro fica alinhado
+        List<Path> segments = files(dir, ".dat");
+        Path active = segments.get(segments.size() - 1);
+        long complete = Files.size(active);
+        Files.write(active, new byte[]{0, 0, 0, 64, 'a', 'b', 'c'}, StandardOpenOption.APPEND);
+
+        ResponseCache cache = new ResponseCache(dir, MEMORY, SEGMENT, DISK);
+        check(Files.size(active) == complete, "cauda rasgada: segmento truncado no último registro completo");
+        cache.put("depois-da-queda", "valor gravado após a recuperação", Duration.ofHours(1));
+        cache.close();
+        entries.put("depois-da-queda", "valor gravado após a recuperação");
+        checkAll(dir, entries, "cauda rasgada");
+    }
+
+    private static void corruptedValue(Path dir, Map<String, String> entries) throws IOException {
+        // Bit trocado no valor depois da abertura: o acerto em disco confere o CRC e vira falha
+        String key = entries.keySet().iterator().next();
+        byte[] value = entries.get(key).getBytes(StandardCharsets.UTF_8);
+        ResponseCache cache = new ResponseCache(dir, MEMORY, SEGMENT, DISK);
+        boolean flipped = false;
+        for (Path segment : files(dir, ".dat")) {
+            byte[] bytes = Files.readAllBytes(segment);
+            int at = indexOf(bytes, value);
+            if (at >= 0) {
+                bytes[at + value.length / 2] ^= 0x01;
+                Files.write(segment, bytes, StandardOpenOption.WRITE);
+                flipped = true;
+                break;
+            }
+        }
+        check(flipped, "valor corrompido: registro encontrado no disco");
+        check(cache.get(key) == null, "valor corrompido: acerto com CRC inválido vira falha");
+        String other = entries.keySet().stream().skip(1).findFirst().get();
+        check(entries.get(other).equals(cache.get(other)), "valor corrompido: demais registros seguem legíveis");
+        cache.close();
+    }
+
+    private static void expiredSegments(Path dir) throws Exception {
+        // Segmentos selados só com registros expirados saem do disco na abertura (e também a cada troca de
+        // segmento, por isso a validade cobre as gravações e só vence com o cache fechado)
+        ResponseCache cache = new ResponseCache(dir, MEMORY, 512, DISK);
+        entries(40).forEach((key, value) -> cache.put(key, value, Duration.ofMillis(500)));
+        cache.close();
+        check(files(dir, ".dat").size() > 2, "expirados: vários segmentos gravados");
+        Thread.sleep(600);
+        ResponseCache reopened = new ResponseCache(dir, MEMORY, 512, DISK);
+        check(files(dir, ".dat").size() == 1 && files(dir, ".idx").isEmpty(), "expirados: só o segmento ativo permanece");
+        reopened.put("nova", "entrada", Duration.ofHours(1));
+        check("entrada".equals(reopened.get("nova")), "expirados: gravação após a limpeza");
+        reopened.close();
+    }
+
+    private static void checkAll(Path dir, Map<String, String> entries, String label) throws IOException {
+        // Cache novo (memória vazia): toda consulta passa pelo índice reconstruído e pelo disco
+        ResponseCache cache = new ResponseCache(dir, MEMORY, SEGMENT, DISK);
+        int wrong = 0;
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            if (!e.getValue().equals(cache.get(e.getKey()))) {
+                wrong++;
+            }
+        }
+        check(wrong == 0, label + ": " + wrong + " de " + entries.size() + " entradas não reproduzidas");
+        cache.close();
+    }
+
+    private static Map<String, String> entries(int count) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = ResponseCache.key("gemini-2.5-flash", 0.7, "prompt " + i, null, false);
+            entries.put(key, "Resposta " + i + ": " + "conteúdo ".repeat(1 + i % 13));
+        }
+        return entries;
+    }
+
+    private static List<Path> files(Path dir, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            System.err.println("FALHOU: " + message);
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+public class TimeSeriesStoreTest {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("stocks-test");
+        try {
+            tornTail(dir.resolve("torn"));
+            invalidLine(dir.resolve("invalid"));
+            rollAndCompact(dir.resolve("roll"));
+            exportAndImport(dir.resolve("export"));
+        } finally {
+            deleteDirectory(dir);
+        }
+        if (failures > 0) {
+            System.err.println("TimeSeriesStoreTest: " + failures + " verificação(ões) falharam.");
+            System.exit(1);
+        }
+        System.out.println("TimeSeriesStoreTest: OK");
+    }
+
+    private static void tornTail(Path dir) throws IOException {
+        // Queda no meio de uma gravação: a linha incompleta é descartada e as seguintes ficam alinhadas
+        List<JSONObject> records = records(20, 0);
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 1024 * 1024, TimeSeriesStore.Sync.ALWAYS)) {
+            for (JSONObject record : records) {
+                store.append(record);
+            }
+        }
+        Path active = dir.resolve("segment-000001.jsonl");
+        long complete = Files.size(active);
+        Files.write(active, "{\"timestamp\":\"2025-01-0".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 1024 * 1024, TimeSeriesStore.Sync.ALWAYS)) {
+            check(store.size() == records.size(), "cauda rasgada: contagem após a abertura");
+            check(Files.size(active) == complete, "cauda rasgada: segmento truncado na última linha completa");
+            check(store.stats().contains("23 bytes de cauda incompleta"), "cauda rasgada: bytes descartados nas estatísticas");
+            List<JSONObject> extra = records(1, records.size());
+            store.append(extra.get(0));
+            records.addAll(extra);
+        }
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 1024 * 1024, TimeSeriesStore.Sync.ALWAYS)) {
+            check(store.size() == records.size(), "cauda rasgada: contagem após nova gravação");
+            check(sameRecords(records, scan(store)), "cauda rasgada: registros reproduzidos");
+        }
+    }
+
+    private static void invalidLine(Path dir) throws IOException {
+        // Uma linha completa mas inválida descarta o restante do segmento ativo a partir dela
+        List<JSONObject> records = records(5, 0);
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 1024 * 1024, TimeSeriesStore.Sync.NEVER)) {
+            for (JSONObject record : records) {
+                store.append(record);
+            }
+        }
+        Path active = dir.resolve("segment-000001.jsonl");
+        String tail = "{\"timestamp\":\n" + records(1, 5).get(0) + "\n";
+        Files.write(active, tail.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 1024 * 1024, TimeSeriesStore.Sync.NEVER)) {
+            check(store.size() == records.size(), "linha inválida: contagem após a abertura");
+            check(sameRecords(records, scan(store)), "linha inválida: registros reproduzidos");
+        }
+    }
+
+    private static void rollAndCompact(Path dir) throws IOException {
+        // Segmentos pequenos: cada segmento selado vira colunar e a leitura reproduz o histórico inteiro
+        List<JSONObject> records = records(300, 0);
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 4096, TimeSeriesStore.Sync.NEVER)) {
+            for (JSONObject record : records) {
+                store.append(record);
+            }
+            check(sameRecords(records, scan(store)), "troca de segmento: registros reproduzidos antes de fechar");
+        }
+        long columnar;
+        long jsonl;
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(p -> p.getFileName().toString()).toList();
+            columnar = names.stream().filter(n -> n.endsWith(".col")).count();
+            jsonl = names.stream().filter(n -> n.endsWith(".jsonl")).count();
+        }
+        check(columnar > 1 && jsonl == 1, "troca de segmento: selados em colunar e só o ativo em JSONL (" + columnar + "/" + jsonl + ")");
+
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 4096, TimeSeriesStore.Sync.NEVER)) {
+            check(store.size() == records.size(), "troca de segmento: contagem após reabrir");
+            check(sameRecords(records, scan(store)), "troca de segmento: registros reproduzidos após reabrir");
+
+            // Varredura por colunas de um intervalo no meio do histórico
+            long from = millis(records.get(100));
+            long to = millis(records.get(110));
+            long[] rows = {0};
+            store.scanColumns(from, to, block -> {
+                for (long time : block.getTimestamps()) {
+                    if (time >= from && time <= to) {
+                        rows[0]++;
+                    }
+                }
+            });
+            check(rows[0] == 11, "troca de segmento: varredura por colunas do intervalo");
+        }
+    }
+
+    private static void exportAndImport(Path dir) throws IOException {
+        // Exportação no formato anterior e importação de volta em um histórico novo
+        List<JSONObject> records = records(50, 0);
+        Path exported = dir.resolveSibling("export.json");
+        try (TimeSeriesStore store = new TimeSeriesStore(dir, 2048, TimeSeriesStore.Sync.NEVER)) {
+            for (JSONObject record : records) {
+                store.append(record);
+            }
+            store.exportJson(exported);
+        }
+        Path imported = dir.resolveSibling("imported");
+        check(TimeSeriesStore.importJson(exported, imported) == records.size(), "importação: registros importados");
+        try (TimeSeriesStore store = new TimeSeriesStore(imported, 2048, TimeSeriesStore.Sync.NEVER)) {
+            check(sameRecords(records, scan(store)), "importação: registros reproduzidos");
+        }
+        try {
+            TimeSeriesStore.importJson(exported, imported);
+            check(false, "importação: destino com registros deveria ser recusado");
+        } catch (IOException e) {
+            // Esperado: o histórico existente não é substituído
+        }
+    }
+
+    private static List<JSONObject> records(int count, int first) {
+        // Coletas a cada 10 s com preços em centavos, como as do StocksLoggerAgent
+        List<JSONObject> records = new ArrayList<>();
+        OffsetDateTime start = OffsetDateTime.parse("2025-01-02T10:00:00-03:00");
+        for (int i = first; i < first + count; i++) {
+            JSONObject stocks = new JSONObject().put("PETR4", 38 + (i % 37) / 100.0).put("VALE3", 61 - (i % 23) / 100.0);
+            records.add(new JSONObject()
+                .put("timestamp", start.plusSeconds(10L * i).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+                .put("stocks", stocks));
+        }
+        return records;
+    }
+
+    private static List<JSONObject> scan(TimeSeriesStore store) throws IOException {
+        List<JSONObject> scanned = new ArrayList<>();
+        store.scan(scanned::add);
+        return scanned;
+    }
+
+    private static boolean sameRecords(List<JSONObject> expected, List<JSONObject> actual) {
+        if (expected.size() != actual.size()) {
+            System.err.println("  esperados " + expected.size() + " registros, lidos " + actual.size());
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).similar(actual.get(i))) {
+                System.err.println("  registro " + (i + 1) + ": esperado " + expected.get(i) + ", lido " + actual.get(i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long millis(JSONObject record) {
+        return OffsetDateTime.parse(record.getString("timestamp"), DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            System.err.println("FALHOU: " + message);
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}